@@ -0,0 +1,116 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.config.ConcurrencyConfig;
+import fr.fullstack.shopapp.repository.search.ShopSearchRepository;
+import fr.fullstack.shopapp.service.ChangeCounterService;
+import fr.fullstack.shopapp.service.ProductIndexingService;
+import fr.fullstack.shopapp.service.ShopService;
+import fr.fullstack.shopapp.service.ShopStatsService;
+import fr.fullstack.shopapp.service.ShopSuggestService;
+import fr.fullstack.shopapp.service.ViewService;
+import fr.fullstack.shopapp.util.Bulkhead;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Data layer of the server (JPA repositories and services) started on an in-memory H2 database in PostgreSQL mode,
+ * without the web layer and without Elasticsearch
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@EntityScan("fr.fullstack.shopapp.model")
+@EnableJpaRepositories("fr.fullstack.shopapp.repository.jpa")
+@Import({
+        CacheConfig.class, ChangeCounterService.class, ConcurrencyConfig.class, ProductIndexingService.class,
+        ShopService.class, ShopStatsService.class, ShopSuggestService.class, ViewService.class
+})
+public class BenchmarkApplication {
+
+    /**
+     * Start the context and seed the synthetic dataset
+     *
+     * @param arguments properties of the benchmark, e.g. "--benchmark.search-latency=20ms"
+     */
+    public static ConfigurableApplicationContext start(
+            int shops, int productsPerShop, int categories, String... arguments
+    ) {
+        // Arguments rather than default properties: they take precedence over the application.properties of the server
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(Stream.concat(Stream.of(
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--ES_URL=localhost:9200",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                                + "DEFAULT_NULL_ORDERING=HIGH;NON_KEYWORDS=DAY,VALUE",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.properties.hibernate.generate_statistics=false",
+                        "--spring.jpa.properties.hibernate.search.enabled=false",
+                        "--spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration"
+                ), Stream.of(arguments)).toArray(String[]::new));
+        SyntheticData.seed(context.getBean(JdbcTemplate.class), shops, productsPerShop, categories);
+        return context;
+    }
+
+    /**
+     * The search hits are the shops of the page in id order: only the hydration of the hits is measured. The latency
+     * of Elasticsearch is simulated by benchmark.search-latency, in the search bulkhead like the real repository.
+     */
+    @Bean
+    public ShopSearchRepository shopSearchRepository(
+            @Qualifier("searchBulkhead") Bulkhead searchBulkhead,
+            @Value("${benchmark.search-latency:0ms}") Duration latency
+    ) {
+        return new ShopSearchRepository() {
+            @Override
+            public Page<Long> search(
+                    String name,
+                    Optional<Boolean> inVacations,
+                    Optional<LocalDate> createdAfter,
+                    Optional<LocalDate> createdBefore,
+                    Pageable pageable
+            ) {
+                return searchBulkhead.call(() -> {
+                    if (!latency.isZero()) {
+                        try {
+                            Thread.sleep(latency);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    List<Long> ids = LongStream.rangeClosed(
+                                    pageable.getOffset() + 1, pageable.getOffset() + pageable.getPageSize()
+                            )
+                            .boxed()
+                            .toList();
+                    return new PageImpl<>(ids, pageable, Long.MAX_VALUE);
+                });
+            }
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.dto.ShopView;
+import fr.fullstack.shopapp.exception.NotFoundException;
+import fr.fullstack.shopapp.service.ShopService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of unknown shops, as sent by the bots scanning random ids: the miss goes through the cache, the database
+ * and the exception answered with a 404.
+ * <ul>
+ * <li>getShop: lookup of a shop in the cache, for reference</li>
+ * <li>getMissingShop: lookup of an unknown shop, failing with a stackless NotFoundException</li>
+ * <li>getMissingShopWithStackTraces: the same lookup wrapped in exceptions with a stack trace, like the service
+ * and the controller did before NotFoundException</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class NotFoundBenchmark {
+    @Param({"0"})
+    public int productsPerShop;
+
+    @Param({"1000"})
+    public int shops;
+
+    private ConfigurableApplicationContext context;
+    private ShopService shopService;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(shops, productsPerShop, 20);
+        shopService = context.getBean(ShopService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ShopView getShop() {
+        return shopService.getShopById(1);
+    }
+
+    @Benchmark
+    public String getMissingShop() {
+        try {
+            return shopService.getShopById(shops + 1).name();
+        } catch (NotFoundException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public String getMissingShopWithStackTraces() {
+        try {
+            try {
+                return shopService.getShopById(shops + 1).name();
+            } catch (NotFoundException e) {
+                throw new Exception(e.getMessage());
+            }
+        } catch (Exception e) {
+            return new RuntimeException(e.getMessage()).getMessage();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.repository.jpa.ProductRepository;
+import fr.fullstack.shopapp.repository.jpa.ProductSpecifications;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyset query of the cursor pages of the products of a shop (ProductService.getProductListAfter), on the last page of
+ * the largest shop: with the index on (shop_id, id), the time does not grow with the number of products of the shop
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class ProductPageBenchmark {
+    private static final int PAGE_SIZE = 20;
+    private static final long SHOP_ID = 1;
+
+    @Param({"1000", "100000"})
+    public int largestShopProducts;
+
+    @Param({"5"})
+    public int productsPerShop;
+
+    @Param({"10000"})
+    public int shops;
+
+    private ConfigurableApplicationContext context;
+    private Specification<Product> filters;
+    private ScrollPosition lastPage;
+    private ProductRepository productRepository;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(shops, productsPerShop, 20);
+        long firstId = SyntheticData.addProducts(context.getBean(JdbcTemplate.class), SHOP_ID, largestShopProducts);
+        productRepository = context.getBean(ProductRepository.class);
+        filters = ProductSpecifications.withFilters(Optional.of(SHOP_ID), Optional.empty());
+        lastPage = ScrollPosition.forward(Map.of("id", firstId + largestShopProducts - PAGE_SIZE - 1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Window<Product> getDeepProductPageOfLargestShop() {
+        return productRepository.findBy(
+                filters, query -> query.sortBy(Sort.by("id")).limit(PAGE_SIZE).scroll(lastPage)
+        );
+    }
+}
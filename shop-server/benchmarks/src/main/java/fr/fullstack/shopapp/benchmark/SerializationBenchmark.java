@@ -0,0 +1,111 @@
+package fr.fullstack.shopapp.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.fullstack.shopapp.dto.LocalizedProductView;
+import fr.fullstack.shopapp.dto.OpeningHoursView;
+import fr.fullstack.shopapp.dto.ProductView;
+import fr.fullstack.shopapp.dto.ShopDTO;
+import fr.fullstack.shopapp.dto.ShopView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the responses of the shop endpoints
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+public class SerializationBenchmark {
+    @Param({"20"})
+    public int pageSize;
+
+    @Param({"0", "10"})
+    public int productsPerShop;
+
+    private List<ShopDTO> dtos;
+    // Same configuration as the object mapper of Spring Boot
+    private ObjectMapper objectMapper;
+    private Page<ShopView> page;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        List<ShopView> shops = new ArrayList<>();
+        dtos = new ArrayList<>();
+        for (int i = 1; i <= pageSize; i++) {
+            ShopView shop = createShop(i);
+            shops.add(shop);
+            dtos.add(createDTO(shop));
+        }
+        page = new PageImpl<>(shops, PageRequest.of(0, pageSize), 10000);
+    }
+
+    @Benchmark
+    public String shopDTOs() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(dtos);
+    }
+
+    @Benchmark
+    public String shopPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(page);
+    }
+
+    private ShopDTO createDTO(ShopView shop) {
+        List<ProductView> products = new ArrayList<>();
+        for (int i = 0; i < productsPerShop; i++) {
+            LocalizedProductView localizedProduct = new LocalizedProductView(
+                    "Description du produit " + i, shop.id() * 1000 + i, "FR", "Produit " + i
+            );
+            products.add(new ProductView(List.of(), shop.id() * 1000 + i, 100 * i, shop, List.of(localizedProduct)));
+        }
+
+        ShopDTO dto = new ShopDTO();
+        dto.setCreatedAt(shop.createdAt());
+        dto.setId(shop.id());
+        dto.setInVacations(shop.inVacations());
+        dto.setName(shop.name());
+        dto.setNbProducts(productsPerShop);
+        dto.setNumberOfCategories(3);
+        dto.setOpeningHours(shop.openingHours());
+        dto.setProducts(productsPerShop == 0 ? null : products);
+        return dto;
+    }
+
+    private ShopView createShop(int id) {
+        List<OpeningHoursView> openingHours = new ArrayList<>();
+        for (int day = 1; day <= 5; day++) {
+            openingHours.add(new OpeningHoursView(LocalTime.of(18, 0), day, id * 10L + day, LocalTime.of(9, 0)));
+        }
+        return new ShopView(
+                LocalDate.of(2020, 1, 1).plusDays(id), id, id % 5 == 0, "Boutique " + id, productsPerShop, 3,
+                openingHours
+        );
+    }
+}
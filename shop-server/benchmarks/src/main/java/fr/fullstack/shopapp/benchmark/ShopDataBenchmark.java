@@ -0,0 +1,107 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.dto.ShopDTO;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.service.ShopService;
+import fr.fullstack.shopapp.validation.ConsistentOpeningHoursValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shop lookups of the data layer: hydration of the full-text search hits, the stats of a shop and of a page of shops,
+ * and the validation of the opening hours of a stored shop
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class ShopDataBenchmark {
+    @Param({"5", "50"})
+    public int productsPerShop;
+
+    @Param({"10000"})
+    public int shops;
+
+    private ConfigurableApplicationContext context;
+    private long shopId;
+    private ShopRepository shopRepository;
+    private ShopService shopService;
+    private TransactionTemplate transaction;
+    private ConsistentOpeningHoursValidator validator;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(shops, productsPerShop, 20);
+        shopRepository = context.getBean(ShopRepository.class);
+        shopService = context.getBean(ShopService.class);
+        shopId = shops / 2;
+        transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        transaction.setReadOnly(true);
+        validator = new ConsistentOpeningHoursValidator();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    // Elasticsearch is stubbed, see BenchmarkApplication.shopSearchRepository
+    @Benchmark
+    public Page<ShopDTO> fullTextShopSearch() {
+        return shopService.fullTextShopSearch(
+                "boulangerie", Optional.empty(), Optional.empty(), Optional.empty(), false, PageRequest.of(0, 20)
+        );
+    }
+
+    @Benchmark
+    public Page<ShopDTO> fullTextShopSearchWithProducts() {
+        return shopService.fullTextShopSearch(
+                "boulangerie", Optional.empty(), Optional.empty(), Optional.empty(), true, PageRequest.of(0, 20)
+        );
+    }
+
+    // Each call uses a new persistence context, so the shop and its stats are read from the database
+    @Benchmark
+    public int getNbCategory() {
+        return shopRepository.findById(shopId).orElseThrow().getNbCategory();
+    }
+
+    // Stats of every shop of a page, as read when a page of shops is serialized
+    @Benchmark
+    public int getNbCategoryOfPage() {
+        return shopRepository.findAll(PageRequest.of(0, 20)).stream().mapToInt(Shop::getNbCategory).sum();
+    }
+
+    // Validation of a shop read from the database, including the load of its opening hours
+    @Benchmark
+    public Boolean consistentOpeningHoursOfStoredShop() {
+        return transaction.execute(status -> validator.isValid(shopRepository.findById(shopId).orElseThrow(), null));
+    }
+
+    // Only read of a conditional request when the client holds the current version of the shop
+    @Benchmark
+    public Optional<String> getShopETag() {
+        return shopService.getShopETag(shopId);
+    }
+}
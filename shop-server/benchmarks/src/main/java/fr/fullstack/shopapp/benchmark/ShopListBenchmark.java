@@ -0,0 +1,81 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.dto.ShopView;
+import fr.fullstack.shopapp.service.ShopService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShopService.getShopList for every sort and filter combination
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class ShopListBenchmark {
+    @Param({"none", "inVacations", "createdAt", "all"})
+    public String filter;
+
+    @Param({"0"})
+    public int page;
+
+    @Param({"5"})
+    public int productsPerShop;
+
+    @Param({"10000"})
+    public int shops;
+
+    @Param({"none", "name", "createdAt", "nbProducts"})
+    public String sortBy;
+
+    private ConfigurableApplicationContext context;
+    private Optional<String> createdAfter;
+    private Optional<String> createdBefore;
+    private Optional<Boolean> inVacations;
+    private ShopService shopService;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(shops, productsPerShop, 20);
+        shopService = context.getBean(ShopService.class);
+        boolean withVacations = filter.equals("inVacations") || filter.equals("all");
+        boolean withCreatedAt = filter.equals("createdAt") || filter.equals("all");
+        inVacations = withVacations ? Optional.of(false) : Optional.empty();
+        createdAfter = withCreatedAt ? Optional.of("2017-01-01") : Optional.empty();
+        createdBefore = withCreatedAt ? Optional.of("2022-01-01") : Optional.empty();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<ShopView> getShopList() {
+        return shopService.getShopList(
+                sortBy.equals("none") ? Optional.empty() : Optional.of(sortBy),
+                inVacations,
+                createdAfter,
+                createdBefore,
+                PageRequest.of(page, 20)
+        );
+    }
+}
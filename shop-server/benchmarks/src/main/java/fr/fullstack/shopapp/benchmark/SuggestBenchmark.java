@@ -0,0 +1,75 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.dto.ShopSuggestion;
+import fr.fullstack.shopapp.util.ShopNameIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suggestions of the in-memory index of the shop names (fallback of GET /shops/suggest), sampled to read the p99
+ */
+@BenchmarkMode(Mode.SampleTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+public class SuggestBenchmark {
+    private static final String[] WORDS = {
+            "boulangerie", "pâtisserie", "épicerie", "librairie", "fleuriste", "boucherie", "fromagerie", "café",
+            "du", "de", "la", "marché", "centre", "gare", "port", "saint", "grand", "petit", "vieux", "nouveau"
+    };
+
+    @Param({"1", "3"})
+    public int prefixLength;
+
+    @Param({"100000"})
+    public int shops;
+
+    private ShopNameIndex index;
+    private String[] prefixes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<ShopSuggestion> names = new ArrayList<>(shops);
+        for (int i = 0; i < shops; i++) {
+            names.add(new ShopSuggestion(i + 1, WORDS[random.nextInt(WORDS.length)] + " "
+                    + WORDS[random.nextInt(WORDS.length)] + " " + i));
+        }
+        index = new ShopNameIndex();
+        index.replaceAll(names);
+
+        prefixes = new String[WORDS.length];
+        for (int i = 0; i < WORDS.length; i++) {
+            prefixes[i] = WORDS[i].substring(0, Math.min(prefixLength, WORDS[i].length()));
+        }
+    }
+
+    @Benchmark
+    public List<ShopSuggestion> suggest() {
+        next = (next + 1) % prefixes.length;
+        return index.suggest(prefixes[next], 10);
+    }
+
+    @Benchmark
+    public List<ShopSuggestion> suggestTwoWords() {
+        next = (next + 1) % prefixes.length;
+        return index.suggest(prefixes[next] + " " + prefixes[(next + 7) % prefixes.length], 10);
+    }
+}
@@ -0,0 +1,113 @@
+package fr.fullstack.shopapp.benchmark;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic dataset: shops with opening hours, products with a french name and categories, and the
+ * shop stats. Shop ids go from 1 to the number of shops.
+ */
+public final class SyntheticData {
+    private static final int BATCH_SIZE = 1000;
+    private static final String[] WORDS = {
+            "Boulangerie", "Fleuriste", "Librairie", "Epicerie", "Fromagerie", "Boucherie", "Caviste", "Droguerie",
+            "Quincaillerie", "Papeterie", "Pharmacie", "Opticien", "Bijouterie", "Chocolaterie", "Patisserie"
+    };
+
+    private SyntheticData() {
+    }
+
+    public static void seed(JdbcTemplate jdbc, int shops, int productsPerShop, int categories) {
+        Random random = new Random(42);
+
+        List<Object[]> categoryRows = new ArrayList<>();
+        for (int i = 1; i <= categories; i++) {
+            categoryRows.add(new Object[]{i, "Catégorie " + i});
+        }
+        insert(jdbc, "INSERT INTO categories (id, name) VALUES (?, ?)", categoryRows);
+
+        List<Object[]> shopRows = new ArrayList<>();
+        List<Object[]> openingHoursRows = new ArrayList<>();
+        List<Object[]> shopOpeningHoursRows = new ArrayList<>();
+        long openingHoursId = 0;
+        for (int i = 1; i <= shops; i++) {
+            shopRows.add(new Object[]{
+                    i,
+                    Date.valueOf(LocalDate.of(2015, 1, 1).plusDays(random.nextInt(3650))),
+                    random.nextInt(5) == 0,
+                    WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i
+            });
+            // Opened from monday to friday
+            for (int day = 1; day <= 5; day++) {
+                openingHoursId++;
+                openingHoursRows.add(new Object[]{
+                        openingHoursId, Time.valueOf(LocalTime.of(18, 0)), day, Time.valueOf(LocalTime.of(9, 0))
+                });
+                shopOpeningHoursRows.add(new Object[]{i, openingHoursId});
+            }
+        }
+        insert(jdbc, "INSERT INTO shops (id, created_at, in_vacations, name) VALUES (?, ?, ?, ?)", shopRows);
+        insert(jdbc, "INSERT INTO opening_hours (id, close_at, day, open_at) VALUES (?, ?, ?, ?)", openingHoursRows);
+        insert(jdbc, "INSERT INTO shops_opening_hours (shop_id, opening_hours_id) VALUES (?, ?)", shopOpeningHoursRows);
+
+        List<Object[]> productRows = new ArrayList<>();
+        List<Object[]> localizedProductRows = new ArrayList<>();
+        List<Object[]> productLocalizedProductRows = new ArrayList<>();
+        List<Object[]> productCategoryRows = new ArrayList<>();
+        long productId = 0;
+        for (int i = 1; i <= shops; i++) {
+            // Between 0 and twice the average number of products
+            int nbProducts = random.nextInt(2 * productsPerShop + 1);
+            for (int j = 0; j < nbProducts; j++) {
+                productId++;
+                productRows.add(new Object[]{productId, random.nextInt(10000), i});
+                localizedProductRows.add(new Object[]{productId, "FR", "Produit " + productId});
+                productLocalizedProductRows.add(new Object[]{productId, productId});
+                if (categories > 0) {
+                    productCategoryRows.add(new Object[]{productId, random.nextInt(categories) + 1});
+                }
+            }
+        }
+        insert(jdbc, "INSERT INTO products (id, price, shop_id) VALUES (?, ?, ?)", productRows);
+        insert(jdbc, "INSERT INTO localized_product (id, locale, name) VALUES (?, ?, ?)", localizedProductRows);
+        insert(jdbc, "INSERT INTO products_localized_product (product_id, localized_product_id) VALUES (?, ?)",
+                productLocalizedProductRows);
+        insert(jdbc, "INSERT INTO products_categories (product_id, category_id) VALUES (?, ?)", productCategoryRows);
+
+        jdbc.update("INSERT INTO shop_stats (shop_id, nb_products, nb_categories) "
+                + "SELECT s.id, COUNT(DISTINCT p.id), COUNT(DISTINCT pc.category_id) "
+                + "FROM shops s "
+                + "LEFT JOIN products p ON p.shop_id = s.id "
+                + "LEFT JOIN products_categories pc ON pc.product_id = p.id "
+                + "GROUP BY s.id");
+    }
+
+    /**
+     * Add products to a seeded shop, after the products of every shop, so that it is the largest shop
+     *
+     * @return the id of the first product added
+     */
+    public static long addProducts(JdbcTemplate jdbc, long shopId, int count) {
+        long firstId = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM products", Long.class);
+        List<Object[]> productRows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            productRows.add(new Object[]{firstId + i, 1000, shopId});
+        }
+        insert(jdbc, "INSERT INTO products (id, price, shop_id) VALUES (?, ?, ?)", productRows);
+        jdbc.update("UPDATE shop_stats SET nb_products = nb_products + ? WHERE shop_id = ?", count, shopId);
+        return firstId;
+    }
+
+    private static void insert(JdbcTemplate jdbc, String sql, List<Object[]> rows) {
+        for (int i = 0; i < rows.size(); i += BATCH_SIZE) {
+            jdbc.batchUpdate(sql, rows.subList(i, Math.min(i + BATCH_SIZE, rows.size())));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.exception.BulkheadFullException;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.service.ShopService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request handling on platform threads (a pool of 200 threads, like Tomcat) and on virtual threads. An operation is
+ * a burst of concurrent requests, the requests per second are requests / score.
+ * <ul>
+ * <li>crud: lookups of shops by id, bounded by the database bulkhead</li>
+ * <li>crudDuringSearchSpike: the same lookups sent just after a spike of searches on a slow Elasticsearch, only the
+ * time of the lookups is measured. On platform threads the searches waiting for the search bulkhead hold the threads
+ * of the pool and delay the lookups, on virtual threads the lookups do not wait for the searches.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class ThreadModelBenchmark {
+    @Param({"200"})
+    public int platformThreads;
+
+    @Param({"1000"})
+    public int requests;
+
+    @Param({"20"})
+    public int searchLatencyMs;
+
+    @Param({"500"})
+    public int searches;
+
+    @Param({"10000"})
+    public int shops;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    private ConfigurableApplicationContext context;
+    private ExecutorService executor;
+    private List<Future<Boolean>> pendingSearches = new ArrayList<>();
+    private ShopRepository shopRepository;
+    private ShopService shopService;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(shops, 5, 20, "--benchmark.search-latency=" + searchLatencyMs + "ms");
+        shopRepository = context.getBean(ShopRepository.class);
+        shopService = context.getBean(ShopService.class);
+        executor = threads.equals("virtual")
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(platformThreads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        context.close();
+    }
+
+    // Not measured: the searches of the spike end before the next burst
+    @TearDown(Level.Invocation)
+    public void awaitSearches() throws InterruptedException, ExecutionException {
+        await(pendingSearches);
+        pendingSearches = new ArrayList<>();
+    }
+
+    @Benchmark
+    public int crud() throws InterruptedException, ExecutionException {
+        return await(lookups());
+    }
+
+    @Benchmark
+    public int crudDuringSearchSpike() throws InterruptedException, ExecutionException {
+        for (int i = 0; i < searches; i++) {
+            int page = i % 50;
+            pendingSearches.add(submit(() -> shopService.fullTextShopSearch(
+                    "boutique", Optional.empty(), Optional.empty(), Optional.empty(), false, PageRequest.of(page, 20)
+            )));
+        }
+        return await(lookups());
+    }
+
+    // Returns the number of requests rejected by a bulkhead
+    private int await(List<Future<Boolean>> responses) throws InterruptedException, ExecutionException {
+        int rejected = 0;
+        for (Future<Boolean> response : responses) {
+            if (!response.get()) {
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    private List<Future<Boolean>> lookups() {
+        List<Future<Boolean>> responses = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            long id = 1 + (i * 7919L) % shops;
+            responses.add(submit(() -> shopRepository.findById(id)));
+        }
+        return responses;
+    }
+
+    private Future<Boolean> submit(Runnable request) {
+        return executor.submit(() -> {
+            try {
+                request.run();
+                return true;
+            } catch (BulkheadFullException e) {
+                return false;
+            }
+        });
+    }
+}
@@ -0,0 +1,95 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.util.ErrorValidation;
+import fr.fullstack.shopapp.validation.ConsistentOpeningHoursValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of the opening hours of a shop and formatting of the validation errors
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+public class ValidationBenchmark {
+    @Param({"1", "10"})
+    public int errorCount;
+
+    @Param({"7", "28"})
+    public int openingHoursCount;
+
+    private Errors errors;
+    private Shop inconsistentShop;
+    private Shop shop;
+    private ConsistentOpeningHoursValidator validator;
+
+    @Setup
+    public void setUp() {
+        // Consistent opening hours spread over the week, so the validator checks every slot
+        List<OpeningHoursShop> openingHours = new ArrayList<>();
+        int slotsPerDay = Math.max(1, openingHoursCount / 7);
+        for (int i = 0; i < openingHoursCount; i++) {
+            OpeningHoursShop hours = new OpeningHoursShop();
+            int slot = i / 7;
+            hours.setDay(i % 7 + 1);
+            hours.setOpenAt(LocalTime.of(8 + slot * 16 / slotsPerDay, 0));
+            hours.setCloseAt(LocalTime.of(8 + slot * 16 / slotsPerDay, 30));
+            openingHours.add(hours);
+        }
+        shop = new Shop();
+        shop.setOpeningHours(openingHours);
+        validator = new ConsistentOpeningHoursValidator();
+
+        // Same opening hours and one more overlapping the last one of its day
+        List<OpeningHoursShop> inconsistentOpeningHours = new ArrayList<>(openingHours);
+        OpeningHoursShop last = openingHours.get(openingHours.size() - 1);
+        OpeningHoursShop overlap = new OpeningHoursShop();
+        overlap.setDay((int) last.getDay());
+        overlap.setOpenAt(last.getOpenAt().plusMinutes(15));
+        overlap.setCloseAt(last.getCloseAt().plusMinutes(15));
+        inconsistentOpeningHours.add(overlap);
+        inconsistentShop = new Shop();
+        inconsistentShop.setOpeningHours(inconsistentOpeningHours);
+
+        errors = new BeanPropertyBindingResult(shop, "shop");
+        for (int i = 0; i < errorCount; i++) {
+            errors.reject("error" + i, "Error message number " + i);
+        }
+    }
+
+    @Benchmark
+    public boolean consistentOpeningHours() {
+        return validator.isValid(shop, null);
+    }
+
+    @Benchmark
+    public boolean inconsistentOpeningHours() {
+        return validator.isValid(inconsistentShop, null);
+    }
+
+    @Benchmark
+    public String errorValidationMessage() {
+        return ErrorValidation.getErrorValidationMessage(errors);
+    }
+}
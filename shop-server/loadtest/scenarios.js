@@ -0,0 +1,158 @@
+// Load test of the REST API at a fixed request rate, one scenario per endpoint.
+//
+// Run it against a server filled by the dataset generator (see README), e.g.:
+//   k6 run -e SHOPS=100000 -e PRODUCTS=2000000 -e RATE=50 -e DURATION=2m loadtest/scenarios.js
+//
+// Each scenario sends RATE requests per second whatever the latency of the server (open model), so a slow endpoint
+// shows up as a latency increase instead of a lower request rate. The summary gives p50, p99 and the throughput of
+// each endpoint. Only the ids of the generated dataset are requested (1..SHOPS, 1..PRODUCTS, 1..CATEGORIES).
+
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const SHOPS = parseInt(__ENV.SHOPS || '10000');
+const PRODUCTS = parseInt(__ENV.PRODUCTS || '100000');
+const CATEGORIES = parseInt(__ENV.CATEGORIES || '100');
+const RATE = parseInt(__ENV.RATE || '20');
+const DURATION = __ENV.DURATION || '1m';
+// Scenarios to run, comma separated, all by default
+const ONLY = __ENV.SCENARIOS ? __ENV.SCENARIOS.split(',') : null;
+
+const SORTS = ['name', 'createdAt', 'nbProducts'];
+const SEARCHES = ['boulangerie', 'épicerie', 'librairie martin', 'fleuriste', 'caviste roux'];
+
+// Requests of each endpoint, the rate of a scenario is relative to RATE
+const ENDPOINTS = {
+    shops_page: {
+        weight: 1,
+        request: () => {
+            const sortBy = pick(SORTS);
+            const page = Math.floor(Math.random() * 50);
+            return http.get(`${BASE_URL}/api/v1/shops?page=${page}&size=20&sortBy=${sortBy}`);
+        },
+    },
+    // Deep pages: the cost of the offset grows with the page number
+    shops_deep_page: {
+        weight: 0.2,
+        request: () => {
+            const page = Math.floor(Math.random() * SHOPS / 20);
+            return http.get(`${BASE_URL}/api/v1/shops?page=${page}&size=20&sortBy=nbProducts`);
+        },
+    },
+    shops_cursor: {
+        weight: 1,
+        request: () => http.get(`${BASE_URL}/api/v1/shops?after=&size=20&withCount=false&sortBy=${pick(SORTS)}`),
+    },
+    shops_filtered: {
+        weight: 0.5,
+        request: () => http.get(
+            `${BASE_URL}/api/v1/shops?page=0&size=20&inVacations=false&createdAfter=2020-01-01&sortBy=createdAt`
+        ),
+    },
+    shop_by_id: {
+        weight: 2,
+        request: () => http.get(`${BASE_URL}/api/v1/shops/${randomId(SHOPS)}`),
+    },
+    shops_search: {
+        weight: 1,
+        request: () => http.get(`${BASE_URL}/api/v1/shops/search?name=${encodeURIComponent(pick(SEARCHES))}&size=20`),
+    },
+    products_of_shop: {
+        weight: 1,
+        // The first shops own most of the products
+        request: () => http.get(`${BASE_URL}/api/v1/products?shopId=${randomId(Math.min(SHOPS, 100))}&size=20`),
+    },
+    products_of_category: {
+        weight: 0.5,
+        request: () => http.get(`${BASE_URL}/api/v1/products?categoryId=${randomId(CATEGORIES)}&page=0&size=20`),
+    },
+    product_by_id: {
+        weight: 2,
+        request: () => http.get(`${BASE_URL}/api/v1/products/${randomId(PRODUCTS)}`),
+    },
+    categories_page: {
+        weight: 0.5,
+        request: () => http.get(`${BASE_URL}/api/v1/categories?page=0&size=20`),
+    },
+    category_by_id: {
+        weight: 0.5,
+        request: () => http.get(`${BASE_URL}/api/v1/categories/${randomId(CATEGORIES)}`),
+    },
+    product_create: {
+        weight: 0.2,
+        request: () => http.post(`${BASE_URL}/api/v1/products`, JSON.stringify({
+            price: 1 + Math.floor(Math.random() * 10000),
+            shop: { id: randomId(SHOPS) },
+            categories: [{ id: randomId(CATEGORIES) }],
+            localizedProducts: [{ locale: 'FR', name: 'Produit de test', description: 'Créé par le test de charge' }],
+        }), { headers: { 'Content-Type': 'application/json' } }),
+    },
+};
+
+const scenarios = {};
+const thresholds = {};
+for (const [name, endpoint] of Object.entries(ENDPOINTS)) {
+    if (ONLY && !ONLY.includes(name)) {
+        continue;
+    }
+    const rate = Math.max(1, Math.round(RATE * endpoint.weight));
+    scenarios[name] = {
+        executor: 'constant-arrival-rate',
+        exec: 'run',
+        env: { ENDPOINT: name },
+        rate: rate,
+        timeUnit: '1s',
+        duration: DURATION,
+        preAllocatedVUs: Math.max(5, rate),
+        maxVUs: Math.max(50, 10 * rate),
+    };
+    // A threshold per scenario makes k6 compute the metrics of each endpoint in the summary
+    thresholds[`http_req_duration{scenario:${name}}`] = ['p(99)<5000'];
+    thresholds[`http_reqs{scenario:${name}}`] = ['count>=0'];
+    thresholds[`http_req_failed{scenario:${name}}`] = ['rate<0.01'];
+}
+
+export const options = {
+    scenarios: scenarios,
+    thresholds: thresholds,
+    summaryTrendStats: ['avg', 'p(50)', 'p(90)', 'p(99)', 'max'],
+    // Only the status and the timings are checked
+    discardResponseBodies: true,
+};
+
+export function run() {
+    const response = ENDPOINTS[__ENV.ENDPOINT].request();
+    check(response, { 'status is 2xx': (r) => r.status >= 200 && r.status < 300 });
+}
+
+export function handleSummary(data) {
+    const lines = [pad('endpoint', 22) + pad('req/s', 10) + pad('p50 (ms)', 10) + pad('p99 (ms)', 10)
+        + pad('max (ms)', 10) + 'errors'];
+    for (const name of Object.keys(scenarios)) {
+        const duration = data.metrics[`http_req_duration{scenario:${name}}`].values;
+        const reqs = data.metrics[`http_reqs{scenario:${name}}`].values;
+        const failed = data.metrics[`http_req_failed{scenario:${name}}`].values;
+        lines.push(pad(name, 22) + pad(reqs.rate.toFixed(1), 10) + pad(duration['p(50)'].toFixed(1), 10)
+            + pad(duration['p(99)'].toFixed(1), 10) + pad(duration.max.toFixed(1), 10)
+            + (100 * failed.rate).toFixed(2) + '%');
+    }
+    const dropped = data.metrics.dropped_iterations ? data.metrics.dropped_iterations.values.count : 0;
+    lines.push('', `dropped iterations (server slower than the rate): ${dropped}`, '');
+    return {
+        stdout: lines.join('\n'),
+        'loadtest/summary.json': JSON.stringify(data, null, 2),
+    };
+}
+
+function pad(value, width) {
+    return String(value).padEnd(width);
+}
+
+function pick(values) {
+    return values[Math.floor(Math.random() * values.length)];
+}
+
+function randomId(max) {
+    return 1 + Math.floor(Math.random() * max);
+}
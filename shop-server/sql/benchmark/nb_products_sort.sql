@@ -0,0 +1,97 @@
+-- Benchmark of the shops listing sorted by number of products --
+--
+-- Run it on an empty database created with create_tables.sql, for several sizes, e.g.:
+--   createdb shop_bench && psql -d shop_bench -f sql/create_tables.sql
+--   psql -d shop_bench -v shops=10000 -v products=100000 -f sql/benchmark/nb_products_sort.sql
+--   psql -d shop_bench -v shops=100000 -v products=1000000 -f sql/benchmark/nb_products_sort.sql
+--
+-- The "before" queries are the former ShopRepository.findByOrderByNbProductsAsc native query and its count query,
+-- the "after" queries are the ones generated by ShopService.getShopList(sortBy=nbProducts).
+-- Compare the execution times between the runs: "before" grows with the number of products (and more than
+-- linearly for the count), "after" only reads the requested page from shop_stats_nb_products_idx.
+
+\set ON_ERROR_STOP on
+\timing on
+
+truncate products_categories, products_localized_product, localized_product, products, categories,
+    shops_opening_hours, opening_hours, shop_stats, shops;
+
+-- Shops --
+insert into shops (id, name, created_at, in_vacations)
+select i, 'Boutique ' || i, date '2010-01-01' + (i % 5000), i % 10 = 0
+from generate_series(1, :shops) i;
+
+-- Categories --
+insert into categories (id, name)
+select i, 'Catégorie ' || i
+from generate_series(1, 100) i;
+
+-- Produits --
+-- a few shops own most of the products
+insert into products (id, price, shop_id)
+select i, (random() * 10000)::int, 1 + floor(power(random(), 3) * :shops)::int
+from generate_series(1, :products) i;
+
+insert into products_categories (product_id, category_id)
+select p.id, 1 + (p.id * c) % 100
+from products p, generate_series(1, 2) c;
+
+-- Shop stats --
+insert into shop_stats (shop_id, nb_products, nb_categories)
+select s.id, count(distinct p.id), count(distinct pc.category_id)
+from shops s
+left join products p on p.shop_id = s.id
+left join products_categories pc on pc.product_id = p.id
+group by s.id
+on conflict (shop_id) do update
+set nb_products = excluded.nb_products, nb_categories = excluded.nb_categories;
+
+analyze;
+
+-- Before: first page --
+explain (analyze, buffers)
+SELECT *,
+    (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) as nbProducts,
+    (SELECT COUNT(DISTINCT pc.category_id) FROM products_categories pc WHERE pc.product_id IN
+        (SELECT p.id FROM products p WHERE p.shop_id = s.id)) as nbCategories
+FROM shops s
+ORDER BY (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) DESC
+LIMIT 5;
+
+-- Before: count --
+explain (analyze, buffers)
+SELECT count(*) FROM (
+    SELECT * FROM shops s ORDER BY (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) DESC
+) c;
+
+-- After: first page --
+explain (analyze, buffers)
+select s1_0.id, s1_0.created_at, s1_0.in_vacations, s1_0.name, s1_1.nb_categories, s1_1.nb_products
+from shops s1_0 left join shop_stats s1_1 on s1_0.id = s1_1.shop_id
+where s1_1.nb_products is not null
+order by s1_1.nb_products, s1_0.id
+offset 0 rows fetch first 5 rows only;
+
+-- After: deep page with a cursor (keyset) --
+explain (analyze, buffers)
+select s1_0.id, s1_0.created_at, s1_0.in_vacations, s1_0.name, s1_1.nb_categories, s1_1.nb_products
+from shops s1_0 left join shop_stats s1_1 on s1_0.id = s1_1.shop_id
+where s1_1.nb_products is not null
+    and (s1_1.nb_products > 0 or s1_1.nb_products = 0 and s1_0.id > (:shops / 2))
+order by s1_1.nb_products, s1_0.id
+fetch first 5 rows only;
+
+-- After: count --
+explain (analyze, buffers)
+select count(s1_0.id) from shops s1_0;
+
+-- After: stats maintenance for a product write in the biggest shop --
+explain (analyze, buffers)
+update shop_stats set nb_products = nb_products + 0 where shop_id = 1;
+
+explain (analyze, buffers)
+update shop_stats st set nb_categories = (
+    select count(distinct pc.category_id) from products p
+    join products_categories pc on pc.product_id = p.id
+    where p.shop_id = st.shop_id)
+where st.shop_id in (1);
@@ -1,6 +1,25 @@
 create table categories (
     id int8 not null,
     name varchar(255) not null,
+    version int8 not null default 0,
+    primary key (id)
+);
+
+create table change_counters (
+    name varchar(255) not null,
+    nb_changes int8 not null,
+    primary key (name)
+);
+
+create table deletion_jobs (
+    id int8 not null,
+    created_at timestamptz not null,
+    entity_id int8 not null,
+    entity_type varchar(255) not null,
+    error text,
+    finished_at timestamptz,
+    instance_id varchar(255),
+    status varchar(255) not null,
     primary key (id)
 );
 
@@ -15,15 +34,19 @@ create table localized_product (
 create table opening_hours (
     id int8 not null,
     close_at time not null,
+    close_minute int4,
     day int4 not null check (day>=1 AND day<=7),
     open_at time not null,
+    open_minute int4,
     primary key (id)
 );
 
 create table products (
+    external_updated_at timestamptz,
     id int8 not null,
     price int8 not null,
     shop_id int8,
+    version int8 not null default 0,
     primary key (id)
 );
 
@@ -40,11 +63,26 @@ create table products_localized_product (
 create table shops (
     id int8 not null,
     created_at date not null,
+    external_updated_at timestamptz,
     in_vacations boolean not null,
     name varchar(255) not null,
+    version int8 not null default 0,
     primary key (id)
 );
 
+create table search_index_state (
+    name varchar(255) not null,
+    mass_indexed_at timestamptz not null,
+    primary key (name)
+);
+
+create table shop_stats (
+    shop_id int8 not null,
+    nb_categories int4 not null default 0,
+    nb_products int8 not null default 0,
+    primary key (shop_id)
+);
+
 create table shops_opening_hours (
     shop_id int8 not null,
     opening_hours_id int8 not null
@@ -85,14 +123,116 @@ add constraint FKti43xlm3mfbeodhgi4qn1yhgw foreign key (opening_hours_id) refere
 alter table shops_opening_hours
 add constraint FK8dcjdnasobclsvyy8wjfki7gj foreign key (shop_id) references shops;
 
+alter table shop_stats
+add constraint FK_shop_stats_shop foreign key (shop_id) references shops;
+
+INSERT INTO change_counters (name, nb_changes) VALUES ('categories', 0), ('products', 0), ('shops', 0);
+
 CREATE SEQUENCE IF NOT EXISTS shops_id_seq;
 CREATE SEQUENCE IF NOT EXISTS opening_hours_shop_id_seq;
+CREATE SEQUENCE IF NOT EXISTS deletion_jobs_id_seq;
+CREATE SEQUENCE IF NOT EXISTS products_id_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS localized_product_id_seq INCREMENT BY 50;
 
-CREATE INDEX ON products (shop_id);
+CREATE INDEX products_shop_id_id_idx ON products (shop_id, id);
 CREATE INDEX ON products_categories (category_id);
 CREATE INDEX ON products_categories (product_id);
 CREATE INDEX ON products_localized_product (localized_product_id);
 CREATE INDEX ON products_localized_product (product_id);
 CREATE INDEX ON shops_opening_hours (opening_hours_id);
 CREATE INDEX ON shops_opening_hours (shop_id);
-
+CREATE INDEX shops_name_idx ON shops (name, id);
+CREATE INDEX shops_created_at_idx ON shops (created_at, id);
+CREATE INDEX shops_in_vacations_created_at_idx ON shops (in_vacations, created_at);
+CREATE INDEX shop_stats_nb_products_idx ON shop_stats (nb_products, shop_id);
+CREATE INDEX shops_external_updated_at_idx ON shops (external_updated_at);
+CREATE INDEX products_external_updated_at_idx ON products (external_updated_at);
+CREATE INDEX opening_hours_minutes_idx ON opening_hours USING gist (int4range(open_minute, close_minute));
+
+-- Stamps the writes made outside the application, indexed then cleared by ShopIndexingService. The connections of the
+-- application set their application_name, given as argument of the triggers, their writes are indexed by Hibernate
+-- Search. 'shop-server' is the default name, the application installs the triggers again with its configured name.
+CREATE FUNCTION shops_set_external_updated_at() RETURNS trigger AS $$
+BEGIN
+    IF current_setting('application_name') <> TG_ARGV[0] THEN
+        NEW.external_updated_at = clock_timestamp();
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER shops_external_updated_at BEFORE INSERT OR UPDATE ON shops
+FOR EACH ROW EXECUTE FUNCTION shops_set_external_updated_at('shop-server');
+
+-- Same for the products, indexed by ProductIndexingService, including the changes of their categories and localized
+-- products
+CREATE FUNCTION products_set_external_updated_at() RETURNS trigger AS $$
+BEGIN
+    IF current_setting('application_name') <> TG_ARGV[0] THEN
+        NEW.external_updated_at = clock_timestamp();
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER products_external_updated_at BEFORE INSERT OR UPDATE ON products
+FOR EACH ROW EXECUTE FUNCTION products_set_external_updated_at('shop-server');
+
+CREATE FUNCTION products_set_external_updated_at_from_join() RETURNS trigger AS $$
+BEGIN
+    IF current_setting('application_name') <> TG_ARGV[0] THEN
+        IF TG_OP <> 'INSERT' THEN
+            UPDATE products SET external_updated_at = clock_timestamp() WHERE id = OLD.product_id;
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            UPDATE products SET external_updated_at = clock_timestamp() WHERE id = NEW.product_id;
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER products_categories_external_updated_at AFTER INSERT OR UPDATE OR DELETE ON products_categories
+FOR EACH ROW EXECUTE FUNCTION products_set_external_updated_at_from_join('shop-server');
+
+CREATE TRIGGER products_localized_product_external_updated_at
+AFTER INSERT OR UPDATE OR DELETE ON products_localized_product
+FOR EACH ROW EXECUTE FUNCTION products_set_external_updated_at_from_join('shop-server');
+
+CREATE FUNCTION localized_product_set_external_updated_at() RETURNS trigger AS $$
+BEGIN
+    IF current_setting('application_name') <> TG_ARGV[0] THEN
+        UPDATE products SET external_updated_at = clock_timestamp() WHERE id IN (
+            SELECT product_id FROM products_localized_product WHERE localized_product_id = NEW.id
+        );
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER localized_product_external_updated_at AFTER UPDATE ON localized_product
+FOR EACH ROW EXECUTE FUNCTION localized_product_set_external_updated_at('shop-server');
+
+-- Stats row of every shop, also for the shops inserted outside the application, maintained by ShopStatsService
+CREATE FUNCTION shops_create_stats() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO shop_stats (shop_id, nb_products, nb_categories) VALUES (NEW.id, 0, 0)
+    ON CONFLICT (shop_id) DO NOTHING;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER shops_create_stats AFTER INSERT ON shops
+FOR EACH ROW EXECUTE FUNCTION shops_create_stats();
+
+-- Minutes of the week of the opening hours (0 is monday 00:00), also set for the writes made outside the application
+CREATE FUNCTION opening_hours_set_minutes() RETURNS trigger AS $$
+BEGIN
+    NEW.open_minute = (NEW.day - 1) * 1440 + EXTRACT(HOUR FROM NEW.open_at) * 60 + EXTRACT(MINUTE FROM NEW.open_at);
+    NEW.close_minute = (NEW.day - 1) * 1440 + EXTRACT(HOUR FROM NEW.close_at) * 60 + EXTRACT(MINUTE FROM NEW.close_at);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER opening_hours_minutes BEFORE INSERT OR UPDATE ON opening_hours
+FOR EACH ROW EXECUTE FUNCTION opening_hours_set_minutes();
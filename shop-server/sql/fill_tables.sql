@@ -721,3 +721,15 @@ insert into products_categories (product_id, category_id) values (292, 45);
 create sequence hibernate_sequence start 295 increment 1;
 SELECT setval('shops_id_seq', (SELECT MAX(id) FROM shops) + 1);
 SELECT setval('opening_hours_shop_id_seq', (SELECT MAX(id) FROM opening_hours) + 1);
+SELECT setval('products_id_seq', (SELECT MAX(id) FROM products));
+SELECT setval('localized_product_id_seq', (SELECT MAX(id) FROM localized_product));
+
+-- Shop stats --
+insert into shop_stats (shop_id, nb_products, nb_categories)
+select s.id, count(distinct p.id), count(distinct pc.category_id)
+from shops s
+left join products p on p.shop_id = s.id
+left join products_categories pc on pc.product_id = p.id
+group by s.id
+on conflict (shop_id) do update
+set nb_products = excluded.nb_products, nb_categories = excluded.nb_categories;
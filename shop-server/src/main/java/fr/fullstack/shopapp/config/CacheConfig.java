@@ -0,0 +1,31 @@
+package fr.fullstack.shopapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String CATEGORIES = "categories";
+    // Product facets of a shop (see ProductService), evicted with the stats of the shop
+    public static final String FACETS = "facets";
+    public static final String PRODUCTS = "products";
+    public static final String SHOPS = "shops";
+
+    /**
+     * Bounded in-process caches of the lookups by id. Evictions made in a transaction are applied after its commit,
+     * so that a concurrent read cannot put back the value being replaced.
+     */
+    @Bean
+    public CacheManager cacheManager(@Value("${shop.cache.spec}") String spec) {
+        // Only the caches listed here exist, an unknown cache name is an error
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(CATEGORIES, FACETS, PRODUCTS, SHOPS);
+        cacheManager.setCacheSpecification(spec);
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
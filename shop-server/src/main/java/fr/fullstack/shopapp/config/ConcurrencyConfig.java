@@ -0,0 +1,97 @@
+package fr.fullstack.shopapp.config;
+
+import fr.fullstack.shopapp.util.Bulkhead;
+import fr.fullstack.shopapp.util.BulkheadDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * With virtual threads (spring.threads.virtual.enabled), the number of requests handled at the same time is no longer
+ * bounded by the Tomcat thread pool. The calls to the database and to Elasticsearch are bounded by a bulkhead each,
+ * so that a slow Elasticsearch cannot take the connections needed by the other endpoints.
+ */
+@Configuration
+public class ConcurrencyConfig {
+    public static final String DATABASE = "database";
+    public static final String EXPORT = "export";
+    public static final String SEARCH = "search";
+
+    // Sized to the connection pool: a request waits for a connection in the bulkhead, in arrival order
+    @Bean
+    public Bulkhead databaseBulkhead(
+            @Value("${shop.bulkhead.database.max-concurrent-calls:${spring.datasource.hikari.maximum-pool-size:10}}")
+            int maxConcurrentCalls,
+            @Value("${shop.bulkhead.database.max-wait:5s}") Duration maxWait,
+            MeterRegistry registry
+    ) {
+        return new Bulkhead(DATABASE, maxConcurrentCalls, maxWait, registry);
+    }
+
+    // An export holds one connection of the pool, and so a permit of the database bulkhead, until the slowest client
+    // has read the whole catalogue: the exports over the limit are rejected at once instead of waiting for them
+    @Bean
+    public Bulkhead exportBulkhead(
+            @Value("${shop.bulkhead.export.max-concurrent-calls:2}") int maxConcurrentCalls,
+            @Value("${shop.bulkhead.export.max-wait:0s}") Duration maxWait,
+            MeterRegistry registry
+    ) {
+        return new Bulkhead(EXPORT, maxConcurrentCalls, maxWait, registry);
+    }
+
+    @Bean
+    public Bulkhead searchBulkhead(
+            @Value("${shop.bulkhead.search.max-concurrent-calls:20}") int maxConcurrentCalls,
+            @Value("${shop.bulkhead.search.max-wait:1s}") Duration maxWait,
+            MeterRegistry registry
+    ) {
+        return new Bulkhead(SEARCH, maxConcurrentCalls, maxWait, registry);
+    }
+
+    // Deletions run in the background (see DeletionJobService), on virtual threads as the requests when they are
+    // enabled. The running and queued jobs are finished before the database is closed, those still running after
+    // shutdown-timeout are failed by the next start of the instance. Not a default candidate, so that Spring Boot still
+    // creates the applicationTaskExecutor of the streamed exports and imports.
+    @Bean(defaultCandidate = false)
+    public ThreadPoolTaskExecutor deletionJobExecutor(
+            @Value("${deletion.jobs.pool-size:2}") int poolSize,
+            @Value("${deletion.jobs.shutdown-timeout:30s}") Duration shutdownTimeout,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setThreadNamePrefix("deletion-job-");
+        if (virtualThreads) {
+            executor.setThreadFactory(new VirtualThreadTaskExecutor("deletion-job-").getVirtualThreadFactory());
+        }
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds((int) shutdownTimeout.toSeconds());
+        return executor;
+    }
+
+    // Every connection of the application, Hibernate Search included, is borrowed through the database bulkhead
+    @Bean
+    public static BeanPostProcessor bulkheadDataSourcePostProcessor(
+            @Qualifier("databaseBulkhead") ObjectProvider<Bulkhead> databaseBulkhead
+    ) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof BulkheadDataSource)) {
+                    return new BulkheadDataSource(dataSource, databaseBulkhead.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
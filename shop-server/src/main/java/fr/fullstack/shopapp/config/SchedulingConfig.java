@@ -0,0 +1,12 @@
+package fr.fullstack.shopapp.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+// The dataset generator and the importer run without Elasticsearch and stop once done
+@Profile("!generate & !import")
+public class SchedulingConfig {
+}
@@ -0,0 +1,50 @@
+package fr.fullstack.shopapp.config;
+
+import org.hibernate.search.backend.elasticsearch.analysis.ElasticsearchAnalysisConfigurationContext;
+import org.hibernate.search.backend.elasticsearch.analysis.ElasticsearchAnalysisConfigurer;
+
+/**
+ * Analyzers of the Elasticsearch indexes, registered with hibernate.search.backend.analysis.configurer
+ */
+public class SearchAnalysisConfigurer implements ElasticsearchAnalysisConfigurer {
+    // Indexes the beginnings of the words of a name, so that a prefix is matched like a whole word
+    public static final String NAME_PREFIX = "name_prefix";
+    // Words of the prefix typed by the user, normalized like the indexed ones but not cut
+    public static final String NAME_PREFIX_SEARCH = "name_prefix_search";
+
+    // Names and descriptions of the products in each locale: stop words removed and words reduced to their stem
+    public static final String PRODUCT_ENGLISH = "product_english";
+    public static final String PRODUCT_FRENCH = "product_french";
+
+    private static final String EDGE_NGRAM = "name_prefix_edge_ngram";
+
+    @Override
+    public void configure(ElasticsearchAnalysisConfigurationContext context) {
+        context.analyzer(NAME_PREFIX).custom()
+                .tokenizer("standard")
+                .tokenFilters("lowercase", "asciifolding", EDGE_NGRAM);
+        context.analyzer(NAME_PREFIX_SEARCH).custom()
+                .tokenizer("standard")
+                .tokenFilters("lowercase", "asciifolding");
+        context.tokenFilter(EDGE_NGRAM).type("edge_ngram")
+                .param("min_gram", 1)
+                .param("max_gram", 20);
+
+        context.analyzer(PRODUCT_ENGLISH).custom()
+                .tokenizer("standard")
+                .tokenFilters("english_possessive", "lowercase", "asciifolding", "english_stop", "english_stemmer");
+        context.tokenFilter("english_possessive").type("stemmer").param("language", "possessive_english");
+        context.tokenFilter("english_stop").type("stop").param("stopwords", "_english_");
+        context.tokenFilter("english_stemmer").type("stemmer").param("language", "english");
+
+        // The elisions (l', d', ...) are removed before the stop words, the accents after the stemming that uses them
+        context.analyzer(PRODUCT_FRENCH).custom()
+                .tokenizer("standard")
+                .tokenFilters("french_elision", "lowercase", "french_stop", "french_stemmer", "asciifolding");
+        context.tokenFilter("french_elision").type("elision")
+                .param("articles_case", true)
+                .param("articles", "l", "m", "t", "qu", "n", "s", "j", "d", "c", "jusqu", "quoiqu", "lorsqu", "puisqu");
+        context.tokenFilter("french_stop").type("stop").param("stopwords", "_french_");
+        context.tokenFilter("french_stemmer").type("stemmer").param("language", "light_french");
+    }
+}
@@ -0,0 +1,31 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.dto.CacheStatsDTO;
+import fr.fullstack.shopapp.service.CacheService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/caches")
+public class CacheController {
+
+    @Autowired
+    private CacheService service;
+
+    @Operation(summary = "Get the hit, miss and eviction statistics of each cache")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Statistics retrieved successfully"),
+    })
+    @GetMapping
+    public ResponseEntity<List<CacheStatsDTO>> getCacheStats() {
+        return ResponseEntity.ok(service.getCacheStats());
+    }
+}
@@ -1,7 +1,12 @@
 package fr.fullstack.shopapp.controller;
 
+import fr.fullstack.shopapp.dto.CategoryView;
+import fr.fullstack.shopapp.exception.InvalidInputException;
 import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.DeletionJob;
 import fr.fullstack.shopapp.service.CategoryService;
+import fr.fullstack.shopapp.service.ChangeCounterService;
+import fr.fullstack.shopapp.service.DeletionJobService;
 import fr.fullstack.shopapp.util.ErrorValidation;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -12,6 +17,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.Errors;
@@ -23,14 +29,22 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.context.request.WebRequest;
 
 import jakarta.validation.Valid;
+import java.net.URI;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/v1/categories")
 public class CategoryController {
 
+    @Autowired
+    private ChangeCounterService changeCounterService;
+
+    @Autowired
+    private DeletionJobService deletionJobService;
+
     @Autowired
     private CategoryService service;
 
@@ -42,30 +56,35 @@ public class CategoryController {
     @PostMapping
     public ResponseEntity<Category> createCategory(@Valid @RequestBody Category category, Errors errors) {
         if (errors.hasErrors()) {
-            throw new ResponseStatusException(
-                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+            throw new InvalidInputException(ErrorValidation.getErrorValidationMessage(errors));
         }
 
-        try {
-            return ResponseEntity.ok(service.createCategory(category));
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        return ResponseEntity.ok(service.createCategory(category));
     }
 
     @Operation(summary = "Delete a category by its id")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Category deleted"),
-            @ApiResponse(responseCode = "400", description = "Invalid category id")
+            @ApiResponse(responseCode = "404", description = "Category not found")
     })
     @DeleteMapping("/{id}")
     public HttpStatus deleteCategory(@PathVariable long id) {
-        try {
-            service.deleteCategoryById(id);
-            return HttpStatus.NO_CONTENT;
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        service.deleteCategoryById(id);
+        return HttpStatus.NO_CONTENT;
+    }
+
+    @Operation(summary = "Delete a category by its id in the background")
+    @Parameters({
+            @Parameter(name = "async", schema = @Schema(type = "boolean"), description = "Must be true, the status of the deletion is then read with /api/v1/jobs/{jobId}")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Deletion job created"),
+            @ApiResponse(responseCode = "404", description = "Category not found")
+    })
+    @DeleteMapping(value = "/{id}", params = "async=true")
+    public ResponseEntity<DeletionJob> deleteCategoryAsync(@PathVariable long id) {
+        DeletionJob job = deletionJobService.deleteCategoryById(id);
+        return ResponseEntity.accepted().location(URI.create("/api/v1/jobs/" + job.getId())).body(job);
     }
 
     @Operation(summary = "Get categories")
@@ -79,42 +98,46 @@ public class CategoryController {
     })
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Categories retrieved successfully"),
+            @ApiResponse(responseCode = "304", description = "Categories not modified since the ETag of If-None-Match")
     })
     @GetMapping
-    public ResponseEntity<Page<Category>> getAllCategories(Pageable pageable) {
-        return ResponseEntity.ok(service.getCategoryList(pageable));
+    public ResponseEntity<Page<CategoryView>> getAllCategories(Pageable pageable, WebRequest request) {
+        Optional<String> eTag = changeCounterService.getETag(ChangeCounterService.CATEGORIES);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null))
+                .body(service.getCategoryList(pageable));
     }
 
     @Operation(summary = "Get a category by id")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Category retrieved successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid category id"),
+            @ApiResponse(responseCode = "304", description = "Category not modified since the ETag of If-None-Match"),
+            @ApiResponse(responseCode = "404", description = "Category not found"),
     })
     @GetMapping("/{id}")
-    public ResponseEntity<Category> getCategoryById(@PathVariable long id) {
-        try {
-            return ResponseEntity.ok().body(service.getCategoryById(id));
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    public ResponseEntity<CategoryView> getCategoryById(@PathVariable long id, WebRequest request) {
+        Optional<String> eTag = service.getCategoryETag(id);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
         }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null))
+                .body(service.getCategoryById(id));
     }
 
     @Operation(summary = "Update a category")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Category modified"),
-            @ApiResponse(responseCode = "400", description = "Invalid input")
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "404", description = "Category not found")
     })
     @PutMapping
     public ResponseEntity<Category> updateCategory(@Valid @RequestBody Category category, Errors errors) {
         if (errors.hasErrors()) {
-            throw new ResponseStatusException(
-                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+            throw new InvalidInputException(ErrorValidation.getErrorValidationMessage(errors));
         }
 
-        try {
-            return ResponseEntity.ok().body(service.updateCategory(category));
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        return ResponseEntity.ok().body(service.updateCategory(category));
     }
 }
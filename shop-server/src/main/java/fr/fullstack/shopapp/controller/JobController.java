@@ -0,0 +1,31 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.model.DeletionJob;
+import fr.fullstack.shopapp.service.DeletionJobService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/jobs")
+public class JobController {
+
+    @Autowired
+    private DeletionJobService service;
+
+    @Operation(summary = "Get the status of a deletion job by id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Job retrieved successfully"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+    })
+    @GetMapping("/{id}")
+    public ResponseEntity<DeletionJob> getJobById(@PathVariable long id) {
+        return ResponseEntity.ok().body(service.getJobById(id));
+    }
+}
@@ -1,7 +1,18 @@
 package fr.fullstack.shopapp.controller;
 
+import fr.fullstack.shopapp.dto.BatchResult;
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.dto.ProductFacets;
+import fr.fullstack.shopapp.dto.ProductLocaleView;
+import fr.fullstack.shopapp.dto.ProductView;
+import fr.fullstack.shopapp.exception.InvalidInputException;
+import fr.fullstack.shopapp.model.Locale;
 import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.service.ChangeCounterService;
+import fr.fullstack.shopapp.service.ExportService;
+import fr.fullstack.shopapp.service.ImportService;
 import fr.fullstack.shopapp.service.ProductService;
+import fr.fullstack.shopapp.util.Bulkhead;
 import fr.fullstack.shopapp.util.ErrorValidation;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -12,7 +23,10 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.Errors;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -21,17 +35,38 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/v1/products")
 public class ProductController {
+    // The products embed their shop and their categories
+    private static final String[] PRODUCT_TABLES = {
+            ChangeCounterService.PRODUCTS, ChangeCounterService.SHOPS, ChangeCounterService.CATEGORIES
+    };
+
+    @Autowired
+    private ChangeCounterService changeCounterService;
+
+    @Autowired
+    private Bulkhead exportBulkhead;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private ImportService importService;
 
     @Autowired
     private ProductService service;
@@ -44,44 +79,152 @@ public class ProductController {
     @PostMapping
     public ResponseEntity<Product> createProduct(@Valid @RequestBody Product product, Errors errors) {
         if (errors.hasErrors()) {
-            throw new ResponseStatusException(
-                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+            throw new InvalidInputException(ErrorValidation.getErrorValidationMessage(errors));
         }
 
-        try {
-            return ResponseEntity.ok(service.createProduct(product));
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        return ResponseEntity.ok(service.createProduct(product));
+    }
+
+    @Operation(summary = "Create several products, saved in JDBC batches")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Valid products created, validation errors reported by item"),
+            @ApiResponse(responseCode = "400", description = "Invalid input")
+    })
+    @PostMapping("/batch")
+    public ResponseEntity<BatchResult> createProducts(@RequestBody List<Product> products) {
+        long start = System.nanoTime();
+        return ResponseEntity.ok(withThroughput(service.createProducts(products), start));
     }
 
     @Operation(summary = "Delete a product by its id")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Product deleted"),
-            @ApiResponse(responseCode = "400", description = "Invalid product id")
+            @ApiResponse(responseCode = "404", description = "Product not found")
     })
     @DeleteMapping("/{id}")
     public HttpStatus deleteProduct(@PathVariable long id) {
-        try {
-            service.deleteProductById(id);
-            return HttpStatus.NO_CONTENT;
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        service.deleteProductById(id);
+        return HttpStatus.NO_CONTENT;
+    }
+
+    @Operation(summary = "Export all the products as NDJSON (one product per line, in id order)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products streamed"),
+            @ApiResponse(responseCode = "503", description = "Too many exports running")
+    })
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportProducts() {
+        // Taken before the response is committed, so that a rejected export is answered with a 503
+        exportBulkhead.acquire();
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(out -> {
+            try {
+                exportService.exportProducts(out);
+            } finally {
+                exportBulkhead.release();
+            }
+        });
+    }
+
+    @Operation(summary = "Full text search for products in their names and descriptions (filtering by shop, category and price is possible)")
+    @Parameters({
+            @Parameter(name = "page", schema = @Schema(type = "integer", defaultValue = "0"), description = "Results page you want to retrieve (0..N)"),
+            @Parameter(name = "size", schema = @Schema(type = "integer", defaultValue = "5"), description = "Number of records per page"),
+            @Parameter(name = "text", schema = @Schema(type = "string"), description = "Words to search for, matched with the stemming of each language"),
+            @Parameter(name = "locale", schema = @Schema(type = "string", allowableValues = {"FR", "EN"}), description = "Locale of the names and descriptions to search, all the locales if not given"),
+            @Parameter(name = "shopId", schema = @Schema(type = "integer"), description = "Id of the shop"),
+            @Parameter(name = "categoryId", schema = @Schema(type = "integer"), description = "Id of the category"),
+            @Parameter(name = "minPrice", schema = @Schema(type = "integer"), description = "Minimum price, included"),
+            @Parameter(name = "maxPrice", schema = @Schema(type = "integer"), description = "Maximum price, included")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products retrieved successfully, best matches first"),
+            @ApiResponse(responseCode = "400", description = "Invalid locale or price range")
+    })
+    @GetMapping("/search")
+    public ResponseEntity<Page<ProductView>> fullTextSearchProducts(
+            Pageable pageable,
+            @RequestParam String text,
+            @RequestParam(required = false) Optional<String> locale,
+            @RequestParam(required = false) Optional<Long> shopId,
+            @RequestParam(required = false) Optional<Long> categoryId,
+            @RequestParam(required = false) Optional<Integer> minPrice,
+            @RequestParam(required = false) Optional<Integer> maxPrice
+    ) {
+        Optional<Locale> searchLocale = locale.filter(value -> !value.isBlank())
+                .map(value -> service.resolveLocale(value, null));
+        return ResponseEntity.ok().body(service.fullTextProductSearch(
+                text, searchLocale, shopId, categoryId, minPrice, maxPrice, pageable
+        ));
+    }
+
+    @Operation(summary = "Count the products per category and per price bucket, of a shop or of a full text search")
+    @Parameters({
+            @Parameter(name = "shopId", schema = @Schema(type = "integer"), description = "Id of the shop, required without text"),
+            @Parameter(name = "text", schema = @Schema(type = "string"), description = "Words to search for, the facets of the whole shop are returned if not given"),
+            @Parameter(name = "locale", schema = @Schema(type = "string", allowableValues = {"FR", "EN"}), description = "Locale of the names and descriptions to search, all the locales if not given")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Facets computed successfully"),
+            @ApiResponse(responseCode = "400", description = "Neither shop nor text, or invalid locale")
+    })
+    @GetMapping("/facets")
+    public ResponseEntity<ProductFacets> getProductFacets(
+            @RequestParam(required = false) Optional<Long> shopId,
+            @RequestParam(required = false) Optional<String> text,
+            @RequestParam(required = false) Optional<String> locale
+    ) {
+        if (text.filter(value -> !value.isBlank()).isPresent()) {
+            Optional<Locale> searchLocale = locale.filter(value -> !value.isBlank())
+                    .map(value -> service.resolveLocale(value, null));
+            return ResponseEntity.ok(service.fullTextProductFacets(text.get(), searchLocale, shopId));
+        }
+        if (shopId.isEmpty()) {
+            throw new InvalidInputException("A shopId or a text must be given");
         }
+        return ResponseEntity.ok(service.getShopProductFacets(shopId.get()));
     }
 
     @Operation(summary = "Get a product by id")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Product retrieved successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid product id")
+            @ApiResponse(responseCode = "304", description = "Product not modified since the ETag of If-None-Match"),
+            @ApiResponse(responseCode = "404", description = "Product not found")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<Product> getProductById(@PathVariable long id) {
-        try {
-            return ResponseEntity.ok().body(service.getProductById(id));
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    public ResponseEntity<ProductView> getProductById(@PathVariable long id, WebRequest request) {
+        // The ETag is read without loading the product, which is only loaded when the client does not have it
+        Optional<String> eTag = service.getProductETag(id);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null))
+                .body(service.getProductById(id));
+    }
+
+    @Operation(summary = "Get a product by id in one locale, with the name and description of this locale only")
+    @Parameters({
+            @Parameter(name = "locale", schema = @Schema(type = "string", allowableValues = {"", "FR", "EN"}), description = "Locale of the name and description, empty to use the Accept-Language header. The french ones are returned when the product is not translated")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Product retrieved successfully"),
+            @ApiResponse(responseCode = "304", description = "Product not modified since the ETag of If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid locale"),
+            @ApiResponse(responseCode = "404", description = "Product not found")
+    })
+    @GetMapping(value = "/{id}", params = "locale")
+    public ResponseEntity<ProductLocaleView> getProductById(
+            @PathVariable long id,
+            WebRequest request,
+            @RequestParam String locale,
+            @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage
+    ) {
+        Locale productLocale = service.resolveLocale(locale, acceptLanguage);
+        Optional<String> eTag = withLocale(service.getProductETag(id), productLocale);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
         }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null))
+                .varyBy(HttpHeaders.ACCEPT_LANGUAGE).body(service.getProductById(id, productLocale));
     }
 
     @Operation(summary = "Get products (filtering by shop and category is possible)")
@@ -93,34 +236,172 @@ public class ProductController {
     })
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Products retrieved successfully"),
+            @ApiResponse(responseCode = "304", description = "Products not modified since the ETag of If-None-Match")
     })
     @GetMapping
-    public ResponseEntity<Page<Product>> getProductsOfShop(
+    public ResponseEntity<Page<ProductView>> getProductsOfShop(
             Pageable pageable,
+            WebRequest request,
             @RequestParam(required = false) Optional<Long> shopId,
             @RequestParam(required = false) Optional<Long> categoryId
     ) {
-        return ResponseEntity.ok(
+        Optional<String> eTag = changeCounterService.getETag(PRODUCT_TABLES);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null)).body(
                 service.getShopProductList(shopId, categoryId, pageable)
         );
     }
 
+    @Operation(summary = "Get products in one locale, with the name and description of this locale only (filtering by shop and category is possible)")
+    @Parameters({
+            @Parameter(name = "page", schema = @Schema(type = "integer", defaultValue = "0"), description = "Results page you want to retrieve (0..N)"),
+            @Parameter(name = "size", schema = @Schema(type = "integer", defaultValue = "5"), description = "Number of records per page"),
+            @Parameter(name = "locale", schema = @Schema(type = "string", allowableValues = {"", "FR", "EN"}), description = "Locale of the names and descriptions, empty to use the Accept-Language header. The french ones are returned for the products which are not translated"),
+            @Parameter(name = "shopId", schema = @Schema(type = "integer"), description = "Id of the shop"),
+            @Parameter(name = "categoryId", schema = @Schema(type = "integer"), description = "Id of the category")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products retrieved successfully"),
+            @ApiResponse(responseCode = "304", description = "Products not modified since the ETag of If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid locale")
+    })
+    @GetMapping(params = "locale")
+    public ResponseEntity<Page<ProductLocaleView>> getLocalizedProductsOfShop(
+            Pageable pageable,
+            WebRequest request,
+            @RequestParam String locale,
+            @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage,
+            @RequestParam(required = false) Optional<Long> shopId,
+            @RequestParam(required = false) Optional<Long> categoryId
+    ) {
+        Locale productLocale = service.resolveLocale(locale, acceptLanguage);
+        Optional<String> eTag = withLocale(changeCounterService.getETag(PRODUCT_TABLES), productLocale);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null))
+                .varyBy(HttpHeaders.ACCEPT_LANGUAGE)
+                .body(service.getShopProductList(shopId, categoryId, productLocale, pageable));
+    }
+
+    @Operation(summary = "Get products with a cursor instead of a page number (filtering by shop and category is possible)")
+    @Parameters({
+            @Parameter(name = "after", schema = @Schema(type = "string"), description = "Cursor returned as nextCursor by the previous call, empty for the first page"),
+            @Parameter(name = "size", schema = @Schema(type = "integer", defaultValue = "5"), description = "Number of records per page"),
+            @Parameter(name = "withCount", schema = @Schema(type = "boolean", defaultValue = "true"), description = "Define that the total number of products must be computed"),
+            @Parameter(name = "shopId", schema = @Schema(type = "integer"), description = "Id of the shop"),
+            @Parameter(name = "categoryId", schema = @Schema(type = "integer"), description = "Id of the category")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products retrieved successfully"),
+            @ApiResponse(responseCode = "304", description = "Products not modified since the ETag of If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<ProductView>> getProductsOfShopAfter(
+            Pageable pageable,
+            WebRequest request,
+            @RequestParam Optional<String> after,
+            @RequestParam(defaultValue = "true") boolean withCount,
+            @RequestParam(required = false) Optional<Long> shopId,
+            @RequestParam(required = false) Optional<Long> categoryId
+    ) {
+        Optional<String> eTag = changeCounterService.getETag(PRODUCT_TABLES);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null)).body(
+                service.getShopProductListAfter(shopId, categoryId, after, pageable.getPageSize(), withCount)
+        );
+    }
+
+    @Operation(summary = "Get products in one locale with a cursor instead of a page number (filtering by shop and category is possible)")
+    @Parameters({
+            @Parameter(name = "after", schema = @Schema(type = "string"), description = "Cursor returned as nextCursor by the previous call, empty for the first page"),
+            @Parameter(name = "size", schema = @Schema(type = "integer", defaultValue = "5"), description = "Number of records per page"),
+            @Parameter(name = "withCount", schema = @Schema(type = "boolean", defaultValue = "true"), description = "Define that the total number of products must be computed"),
+            @Parameter(name = "locale", schema = @Schema(type = "string", allowableValues = {"", "FR", "EN"}), description = "Locale of the names and descriptions, empty to use the Accept-Language header. The french ones are returned for the products which are not translated"),
+            @Parameter(name = "shopId", schema = @Schema(type = "integer"), description = "Id of the shop"),
+            @Parameter(name = "categoryId", schema = @Schema(type = "integer"), description = "Id of the category")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products retrieved successfully"),
+            @ApiResponse(responseCode = "304", description = "Products not modified since the ETag of If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or locale")
+    })
+    @GetMapping(params = {"after", "locale"})
+    public ResponseEntity<CursorPage<ProductLocaleView>> getLocalizedProductsOfShopAfter(
+            Pageable pageable,
+            WebRequest request,
+            @RequestParam Optional<String> after,
+            @RequestParam(defaultValue = "true") boolean withCount,
+            @RequestParam String locale,
+            @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage,
+            @RequestParam(required = false) Optional<Long> shopId,
+            @RequestParam(required = false) Optional<Long> categoryId
+    ) {
+        Locale productLocale = service.resolveLocale(locale, acceptLanguage);
+        Optional<String> eTag = withLocale(changeCounterService.getETag(PRODUCT_TABLES), productLocale);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null))
+                .varyBy(HttpHeaders.ACCEPT_LANGUAGE).body(service.getShopProductListAfter(
+                        shopId, categoryId, productLocale, after, pageable.getPageSize(), withCount
+                ));
+    }
+
+    @Operation(summary = "Import products sent as NDJSON (one product per line, in the JSON of POST /api/v1/products), loaded with COPY")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Progress of the import streamed as NDJSON, one line per chunk with the ids of the imported products and the rejected lines")
+    })
+    @PostMapping(
+            value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    public ResponseEntity<StreamingResponseBody> importProducts(HttpServletRequest request) {
+        // The upload is read while the progress is written
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> importService.importProducts(request.getInputStream(), out));
+    }
+
+    @Operation(summary = "Update several products, saved in JDBC batches")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Valid products modified, validation errors reported by item"),
+            @ApiResponse(responseCode = "400", description = "Invalid input")
+    })
+    @PutMapping("/batch")
+    public ResponseEntity<BatchResult> updateProducts(@RequestBody List<Product> products) {
+        long start = System.nanoTime();
+        return ResponseEntity.ok(withThroughput(service.updateProducts(products), start));
+    }
+
     @Operation(summary = "Update a product")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Product modified"),
-            @ApiResponse(responseCode = "400", description = "Invalid input")
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "404", description = "Product not found")
     })
     @PutMapping
     public ResponseEntity<Product> updateProduct(@Valid @RequestBody Product product, Errors errors) {
         if (errors.hasErrors()) {
-            throw new ResponseStatusException(
-                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+            throw new InvalidInputException(ErrorValidation.getErrorValidationMessage(errors));
         }
 
-        try {
-            return ResponseEntity.ok().body(service.updateProduct(product));
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        return ResponseEntity.ok().body(service.updateProduct(product));
+    }
+
+    // The representations of the locales differ, so do their ETags
+    private Optional<String> withLocale(Optional<String> eTag, Locale locale) {
+        return eTag.map(value -> value.substring(0, value.length() - 1) + "." + locale.name() + "\"");
+    }
+
+    // The duration includes the commit of the transaction
+    private BatchResult withThroughput(BatchResult result, long start) {
+        long durationNanos = System.nanoTime() - start;
+        result.setDurationMs(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+        result.setRowsPerSecond(durationNanos == 0 ? 0 : result.getSaved() * 1e9 / durationNanos);
+        return result;
     }
 }
@@ -1,8 +1,20 @@
 package fr.fullstack.shopapp.controller;
 
+import fr.fullstack.shopapp.dto.CursorPage;
 import fr.fullstack.shopapp.dto.ShopDTO;
+import fr.fullstack.shopapp.dto.ShopSuggestion;
+import fr.fullstack.shopapp.dto.ShopView;
+import fr.fullstack.shopapp.exception.InvalidInputException;
+import fr.fullstack.shopapp.model.DeletionJob;
 import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.service.ChangeCounterService;
+import fr.fullstack.shopapp.service.DeletionJobService;
+import fr.fullstack.shopapp.service.ExportService;
+import fr.fullstack.shopapp.service.ImportService;
+import fr.fullstack.shopapp.service.OpeningHoursService;
 import fr.fullstack.shopapp.service.ShopService;
+import fr.fullstack.shopapp.service.ShopSuggestService;
+import fr.fullstack.shopapp.util.Bulkhead;
 import fr.fullstack.shopapp.util.ErrorValidation;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,7 +25,10 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.Errors;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -25,10 +40,14 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 
+import java.net.URI;
+import java.time.LocalTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,9 +55,30 @@ import java.util.Optional;
 @RequestMapping("/api/v1/shops")
 public class ShopController {
 
+    @Autowired
+    private ChangeCounterService changeCounterService;
+
+    @Autowired
+    private DeletionJobService deletionJobService;
+
+    @Autowired
+    private Bulkhead exportBulkhead;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private ImportService importService;
+
+    @Autowired
+    private OpeningHoursService openingHoursService;
+
     @Autowired
     private ShopService service;
 
+    @Autowired
+    private ShopSuggestService shopSuggestService;
+
     @Operation(summary = "Create a shop")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Shop created"),
@@ -47,30 +87,53 @@ public class ShopController {
     @PostMapping
     public ResponseEntity<Shop> createShop(@Valid @RequestBody Shop shop, Errors errors) {
         if (errors.hasErrors()) {
-            throw new ResponseStatusException(
-                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+            throw new InvalidInputException(ErrorValidation.getErrorValidationMessage(errors));
         }
 
-        try {
-            return ResponseEntity.ok(service.createShop(shop));
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        return ResponseEntity.ok(service.createShop(shop));
     }
 
     @Operation(summary = "Delete a shop by its id")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Shop deleted"),
-            @ApiResponse(responseCode = "400", description = "Invalid shop id")
+            @ApiResponse(responseCode = "404", description = "Shop not found")
     })
     @DeleteMapping("/{id}")
     public HttpStatus deleteShop(@PathVariable long id) {
-        try {
-            service.deleteShopById(id);
-            return HttpStatus.NO_CONTENT;
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        service.deleteShopById(id);
+        return HttpStatus.NO_CONTENT;
+    }
+
+    @Operation(summary = "Delete a shop by its id in the background")
+    @Parameters({
+            @Parameter(name = "async", schema = @Schema(type = "boolean"), description = "Must be true, the status of the deletion is then read with /api/v1/jobs/{jobId}")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Deletion job created"),
+            @ApiResponse(responseCode = "404", description = "Shop not found")
+    })
+    @DeleteMapping(value = "/{id}", params = "async=true")
+    public ResponseEntity<DeletionJob> deleteShopAsync(@PathVariable long id) {
+        DeletionJob job = deletionJobService.deleteShopById(id);
+        return ResponseEntity.accepted().location(URI.create("/api/v1/jobs/" + job.getId())).body(job);
+    }
+
+    @Operation(summary = "Export all the shops as NDJSON (one shop per line, in id order)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shops streamed"),
+            @ApiResponse(responseCode = "503", description = "Too many exports running")
+    })
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportShops() {
+        // Taken before the response is committed, so that a rejected export is answered with a 503
+        exportBulkhead.acquire();
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(out -> {
+            try {
+                exportService.exportShops(out);
+            } finally {
+                exportBulkhead.release();
+            }
+        });
     }
 
     @Operation(summary = "Get shops (sorting and filtering are possible)")
@@ -79,76 +142,179 @@ public class ShopController {
             @Parameter(name = "size", schema = @Schema(type = "integer", defaultValue = "5"), description = "Number of records per page"),
             @Parameter(name = "sortBy", schema = @Schema(type = "string"), description = "To sort the shops. Possible values are 'name', 'nbProducts' and 'createdAt'"),
             @Parameter(name = "inVacations", schema = @Schema(type = "boolean"), description = "Define that the shops must be in vacations or not"),
-            @Parameter(name = "createdAfter", schema = @Schema(type = "string"), description = "Define that the shops must be created after this date"),
-            @Parameter(name = "createdBefore", schema = @Schema(type = "string"), description = "Define that the shops must be created before this date")
+            @Parameter(name = "createdAfter", schema = @Schema(type = "string"), description = "Define that the shops must be created after this date (yyyy-MM-dd)"),
+            @Parameter(name = "createdBefore", schema = @Schema(type = "string"), description = "Define that the shops must be created before this date (yyyy-MM-dd)")
     })
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Shops retrieved successfully"),
+            @ApiResponse(responseCode = "304", description = "Shops not modified since the ETag of If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid date")
     })
     @GetMapping
-    public ResponseEntity<Page<Shop>> getAllShops(
+    public ResponseEntity<Page<ShopView>> getAllShops(
             Pageable pageable,
+            WebRequest request,
             @RequestParam(required = false) Optional<String> sortBy,
             @RequestParam(required = false) Optional<Boolean> inVacations,
             @RequestParam(required = false) Optional<String> createdAfter,
             @RequestParam(required = false) Optional<String> createdBefore
 
     ) {
-        return ResponseEntity.ok(
+        Optional<String> eTag = changeCounterService.getETag(ChangeCounterService.SHOPS);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null)).body(
                 service.getShopList(sortBy, inVacations, createdAfter, createdBefore, pageable)
         );
     }
 
+    @Operation(summary = "Get shops with a cursor instead of a page number (sorting and filtering are possible)")
+    @Parameters({
+            @Parameter(name = "after", schema = @Schema(type = "string"), description = "Cursor returned as nextCursor by the previous call, empty for the first page"),
+            @Parameter(name = "size", schema = @Schema(type = "integer", defaultValue = "5"), description = "Number of records per page"),
+            @Parameter(name = "withCount", schema = @Schema(type = "boolean", defaultValue = "true"), description = "Define that the total number of shops must be computed"),
+            @Parameter(name = "sortBy", schema = @Schema(type = "string"), description = "To sort the shops. Possible values are 'name', 'nbProducts' and 'createdAt'"),
+            @Parameter(name = "inVacations", schema = @Schema(type = "boolean"), description = "Define that the shops must be in vacations or not"),
+            @Parameter(name = "createdAfter", schema = @Schema(type = "string"), description = "Define that the shops must be created after this date (yyyy-MM-dd)"),
+            @Parameter(name = "createdBefore", schema = @Schema(type = "string"), description = "Define that the shops must be created before this date (yyyy-MM-dd)")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shops retrieved successfully"),
+            @ApiResponse(responseCode = "304", description = "Shops not modified since the ETag of If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or date")
+    })
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<ShopView>> getAllShopsAfter(
+            Pageable pageable,
+            WebRequest request,
+            @RequestParam Optional<String> after,
+            @RequestParam(defaultValue = "true") boolean withCount,
+            @RequestParam(required = false) Optional<String> sortBy,
+            @RequestParam(required = false) Optional<Boolean> inVacations,
+            @RequestParam(required = false) Optional<String> createdAfter,
+            @RequestParam(required = false) Optional<String> createdBefore
+    ) {
+        Optional<String> eTag = changeCounterService.getETag(ChangeCounterService.SHOPS);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null)).body(
+                service.getShopListAfter(
+                        sortBy, inVacations, createdAfter, createdBefore, after, pageable.getPageSize(), withCount
+                )
+        );
+    }
+
+    @Operation(summary = "Get the shops open at a given time and not in vacations, in id order")
+    @Parameters({
+            @Parameter(name = "day", schema = @Schema(type = "integer", minimum = "1", maximum = "7"), description = "Day of the week (1 is monday), today if not given"),
+            @Parameter(name = "time", schema = @Schema(type = "string", example = "10:00"), description = "Time of the day, now if not given"),
+            @Parameter(name = "after", schema = @Schema(type = "string"), description = "Cursor returned as nextCursor by the previous call, empty for the first page"),
+            @Parameter(name = "size", schema = @Schema(type = "integer", defaultValue = "5"), description = "Number of records per page")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shops retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid day or cursor")
+    })
+    @GetMapping("/open")
+    public ResponseEntity<CursorPage<ShopView>> getOpenShops(
+            Pageable pageable,
+            @RequestParam(required = false) Optional<Integer> day,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) Optional<LocalTime> time,
+            @RequestParam(required = false) Optional<String> after
+    ) {
+        return ResponseEntity.ok(openingHoursService.getOpenShopList(day, time, after, pageable.getPageSize()));
+    }
+
     @Operation(summary = "Full text search for shops")
     @Parameters({
+            @Parameter(name = "page", schema = @Schema(type = "integer", defaultValue = "0"), description = "Results page you want to retrieve (0..N)"),
+            @Parameter(name = "size", schema = @Schema(type = "integer", defaultValue = "5"), description = "Number of records per page"),
             @Parameter(name = "name", schema = @Schema(type = "string"), description = "Name of the shop to search for"),
             @Parameter(name = "inVacations", schema = @Schema(type = "boolean"), description = "Define that the shops must be in vacations or not"),
-            @Parameter(name = "createdAfter", schema = @Schema(type = "string"), description = "Define that the shops must be created after this date"),
-            @Parameter(name = "createdBefore", schema = @Schema(type = "string"), description = "Define that the shops must be created before this date")
+            @Parameter(name = "createdAfter", schema = @Schema(type = "string"), description = "Define that the shops must be created after this date (yyyy-MM-dd)"),
+            @Parameter(name = "createdBefore", schema = @Schema(type = "string"), description = "Define that the shops must be created before this date (yyyy-MM-dd)"),
+            @Parameter(name = "include", schema = @Schema(type = "string"), description = "Use 'products' to return the products of the shops")
     })
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Shops retrieved successfully")
+            @ApiResponse(responseCode = "200", description = "Shops retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid date")
     })
     @GetMapping("/search")
-    public ResponseEntity<List<ShopDTO>> fullTextSearchShops(
+    public ResponseEntity<Page<ShopDTO>> fullTextSearchShops(
+            Pageable pageable,
             @RequestParam String name,
             @RequestParam(required = false) Optional<Boolean> inVacations,
             @RequestParam(required = false) Optional<String> createdAfter,
-            @RequestParam(required = false) Optional<String> createdBefore
+            @RequestParam(required = false) Optional<String> createdBefore,
+            @RequestParam(required = false) Optional<String> include
     ) {
-        return ResponseEntity.ok().body(service.fullTextShopSearch(name, inVacations, createdAfter, createdBefore));
+        boolean withProducts = include.filter("products"::equals).isPresent();
+        return ResponseEntity.ok().body(
+                service.fullTextShopSearch(name, inVacations, createdAfter, createdBefore, withProducts, pageable)
+        );
     }
 
     @Operation(summary = "Get a shop by id")
     @GetMapping("/{id}")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Shop retrieved successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid shop id")
+            @ApiResponse(responseCode = "304", description = "Shop not modified since the ETag of If-None-Match"),
+            @ApiResponse(responseCode = "404", description = "Shop not found")
     })
-    public ResponseEntity<Shop> getShopById(@PathVariable long id) {
-        try {
-            return ResponseEntity.ok().body(service.getShopById(id));
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    public ResponseEntity<ShopView> getShopById(@PathVariable long id, WebRequest request) {
+        // The ETag is read without loading the shop, which is only loaded when the client does not have it
+        Optional<String> eTag = service.getShopETag(id);
+        if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+            return null;
         }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(eTag.orElse(null))
+                .body(service.getShopById(id));
+    }
+
+    @Operation(summary = "Import shops sent as NDJSON (one shop per line, in the JSON of POST /api/v1/shops), loaded with COPY")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Progress of the import streamed as NDJSON, one line per chunk with the ids of the imported shops and the rejected lines")
+    })
+    @PostMapping(
+            value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    public ResponseEntity<StreamingResponseBody> importShops(HttpServletRequest request) {
+        // The upload is read while the progress is written
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> importService.importShops(request.getInputStream(), out));
+    }
+
+    @Operation(summary = "Suggest shops whose name has words starting with the words of the prefix, for autocompletion")
+    @Parameters({
+            @Parameter(name = "prefix", schema = @Schema(type = "string"), description = "Beginning of the name typed by the user"),
+            @Parameter(name = "size", schema = @Schema(type = "integer", defaultValue = "10"), description = "Maximum number of shops (at most 50)")
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ids and names of the shops, best matches first"),
+            @ApiResponse(responseCode = "400", description = "Invalid size")
+    })
+    @GetMapping("/suggest")
+    public ResponseEntity<List<ShopSuggestion>> suggestShops(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        return ResponseEntity.ok(shopSuggestService.suggest(prefix, size));
     }
 
     @Operation(summary = "Update a shop")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Shop modified"),
-            @ApiResponse(responseCode = "400", description = "Invalid input")
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "404", description = "Shop not found")
     })
     @PutMapping
     public ResponseEntity<Shop> updateShop(@Valid @RequestBody Shop shop, Errors errors) {
         if (errors.hasErrors()) {
-            throw new ResponseStatusException(
-                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+            throw new InvalidInputException(ErrorValidation.getErrorValidationMessage(errors));
         }
 
-        try {
-            return ResponseEntity.ok().body(service.updateShop(shop));
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        return ResponseEntity.ok().body(service.updateShop(shop));
     }
 }
@@ -0,0 +1,48 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class BatchItemResult {
+
+    // Validation errors of the item, empty when the item was saved
+    private List<String> errors;
+    private Long id;
+    // Position of the item in the request
+    private int index;
+
+    public BatchItemResult(int index) {
+        this.index = index;
+    }
+
+    // Getters and Setters
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public boolean isValid() {
+        return errors == null || errors.isEmpty();
+    }
+}
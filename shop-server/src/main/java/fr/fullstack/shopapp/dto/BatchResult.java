@@ -0,0 +1,53 @@
+package fr.fullstack.shopapp.dto;
+
+import java.util.List;
+
+public class BatchResult {
+
+    private long durationMs;
+    private int failed;
+    private List<BatchItemResult> items;
+    private double rowsPerSecond;
+    private int saved;
+
+    // Getters and Setters
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public List<BatchItemResult> getItems() {
+        return items;
+    }
+
+    public void setItems(List<BatchItemResult> items) {
+        this.items = items;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public int getSaved() {
+        return saved;
+    }
+
+    public void setSaved(int saved) {
+        this.saved = saved;
+    }
+}
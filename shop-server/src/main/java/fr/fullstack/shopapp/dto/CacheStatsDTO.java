@@ -0,0 +1,75 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+public class CacheStatsDTO {
+
+    // Not provided by the Hibernate statistics
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long evictionCount;
+    private long hitCount;
+    private double hitRate;
+    private long missCount;
+    private String name;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long size;
+    // "spring" for the caches of the services, "hibernate" for the second-level cache regions
+    private String type;
+
+    // Getters and Setters
+    public Long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public void setEvictionCount(Long evictionCount) {
+        this.evictionCount = evictionCount;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public void setHitCount(long hitCount) {
+        this.hitCount = hitCount;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public void setHitRate(double hitRate) {
+        this.hitRate = hitRate;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public void setMissCount(long missCount) {
+        this.missCount = missCount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+}
@@ -0,0 +1,7 @@
+package fr.fullstack.shopapp.dto;
+
+/**
+ * Category returned by the GET endpoints
+ */
+public record CategoryView(long id, String name) {
+}
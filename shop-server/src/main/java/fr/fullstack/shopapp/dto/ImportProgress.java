@@ -0,0 +1,86 @@
+package fr.fullstack.shopapp.dto;
+
+import java.util.List;
+
+/**
+ * Progress of an import, reported once per chunk of lines. The counters are the totals since the start of the import,
+ * the ids and the rejected lines are the ones of the chunk.
+ */
+public class ImportProgress {
+
+    private long durationMs;
+    private int failed;
+    private boolean finished;
+    // Ids of the rows imported by the chunk, in the order of the lines
+    private List<Long> ids;
+    private long lines;
+    // Errors of the rejected lines of the chunk, the index is the number of the line (from 1)
+    private List<BatchItemResult> rejected;
+    private double rowsPerSecond;
+    private int saved;
+
+    // Getters and Setters
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void setFinished(boolean finished) {
+        this.finished = finished;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public void setLines(long lines) {
+        this.lines = lines;
+    }
+
+    public List<BatchItemResult> getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(List<BatchItemResult> rejected) {
+        this.rejected = rejected;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public int getSaved() {
+        return saved;
+    }
+
+    public void setSaved(int saved) {
+        this.saved = saved;
+    }
+}
@@ -0,0 +1,7 @@
+package fr.fullstack.shopapp.dto;
+
+/**
+ * Name and description of a product in a locale, returned by the GET endpoints
+ */
+public record LocalizedProductView(String description, long id, String locale, String name) {
+}
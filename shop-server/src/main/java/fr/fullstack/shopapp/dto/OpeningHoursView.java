@@ -0,0 +1,16 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.LocalTime;
+
+/**
+ * Opening hours of a shop returned by the GET endpoints
+ */
+public record OpeningHoursView(
+        @JsonFormat(pattern = "HH:mm:ss") LocalTime closeAt,
+        int day,
+        long id,
+        @JsonFormat(pattern = "HH:mm:ss") LocalTime openAt
+) {
+}
@@ -0,0 +1,21 @@
+package fr.fullstack.shopapp.dto;
+
+import java.util.List;
+
+/**
+ * Counts of products returned by GET /products/facets, to build the category and price filters of a listing
+ *
+ * @param categories the categories with at least one product, the most used first
+ * @param prices     the price buckets with at least one product, the cheapest first
+ */
+public record ProductFacets(long total, List<CategoryCount> categories, List<PriceBucket> prices) {
+
+    public record CategoryCount(long id, String name, long count) {
+    }
+
+    /**
+     * Products priced from min included to max excluded
+     */
+    public record PriceBucket(int min, int max, long count) {
+    }
+}
@@ -0,0 +1,18 @@
+package fr.fullstack.shopapp.dto;
+
+import java.util.List;
+
+/**
+ * Product returned by the GET endpoints in one locale, with the name and the description of this locale or in french
+ * when the product is not translated
+ */
+public record ProductLocaleView(
+        List<CategoryView> categories,
+        String description,
+        long id,
+        String locale,
+        String name,
+        int price,
+        ShopView shop
+) {
+}
@@ -0,0 +1,15 @@
+package fr.fullstack.shopapp.dto;
+
+import java.util.List;
+
+/**
+ * Product returned by the GET endpoints, with its shop, its categories and its names
+ */
+public record ProductView(
+        List<CategoryView> categories,
+        long id,
+        int price,
+        ShopView shop,
+        List<LocalizedProductView> localizedProducts
+) {
+}
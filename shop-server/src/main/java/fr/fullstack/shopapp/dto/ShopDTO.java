@@ -1,11 +1,10 @@
 package fr.fullstack.shopapp.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.time.LocalDate;
 import java.util.List;
 
-import fr.fullstack.shopapp.model.OpeningHoursShop;
-import fr.fullstack.shopapp.model.Product;
-
 public class ShopDTO {
 
     private long id;
@@ -13,8 +12,10 @@ public class ShopDTO {
     private boolean inVacations;
     private String name;
     private long nbProducts;
-    private List<OpeningHoursShop> openingHours;
-    private List<Product> products;
+    private List<OpeningHoursView> openingHours;
+    // only filled when the products are asked, see ShopService.fullTextShopSearch
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ProductView> products;
     private int numberOfCategories;
 
     // Getters and Setters
@@ -58,19 +59,19 @@ public class ShopDTO {
         this.nbProducts = nbProducts;
     }
 
-    public List<OpeningHoursShop> getOpeningHours() {
+    public List<OpeningHoursView> getOpeningHours() {
         return openingHours;
     }
 
-    public void setOpeningHours(List<OpeningHoursShop> openingHours) {
+    public void setOpeningHours(List<OpeningHoursView> openingHours) {
         this.openingHours = openingHours;
     }
 
-    public List<Product> getProducts() {
+    public List<ProductView> getProducts() {
         return products;
     }
 
-    public void setProducts(List<Product> products) {
+    public void setProducts(List<ProductView> products) {
         this.products = products;
     }
 
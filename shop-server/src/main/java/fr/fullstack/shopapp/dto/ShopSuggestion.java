@@ -0,0 +1,7 @@
+package fr.fullstack.shopapp.dto;
+
+/**
+ * Shop suggested for a prefix of its name
+ */
+public record ShopSuggestion(long id, String name) {
+}
@@ -0,0 +1,20 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Shop returned by the GET endpoints, with its stats and its opening hours
+ */
+public record ShopView(
+        @JsonFormat(pattern = "yyyy-MM-dd") LocalDate createdAt,
+        long id,
+        boolean inVacations,
+        String name,
+        long nbProducts,
+        int nbCategory,
+        List<OpeningHoursView> openingHours
+) {
+}
@@ -0,0 +1,10 @@
+package fr.fullstack.shopapp.exception;
+
+/**
+ * No permit of a bulkhead was released before the maximum wait, the call was not made
+ */
+public class BulkheadFullException extends RuntimeException {
+    public BulkheadFullException(String name) {
+        super("Too many concurrent calls to " + name + ", retry later");
+    }
+}
@@ -0,0 +1,12 @@
+package fr.fullstack.shopapp.exception;
+
+/**
+ * Expected failure of a service call (unknown id, invalid input), mapped to an error status by
+ * GlobalExceptionHandler. Only the message is returned to the client, so the stack trace is not filled: these
+ * exceptions are thrown on the normal request path and cost no more than a lookup miss.
+ */
+public abstract class DomainException extends RuntimeException {
+    protected DomainException(String message) {
+        super(message, null, false, false);
+    }
+}
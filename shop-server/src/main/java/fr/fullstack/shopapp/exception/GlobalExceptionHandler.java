@@ -1,9 +1,19 @@
 package fr.fullstack.shopapp.exception;
 
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.validation.DataBinder;
 import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.InitBinder;
 
+import java.io.IOException;
+
 @ControllerAdvice
 public class GlobalExceptionHandler {
     /**
@@ -13,4 +23,36 @@ public class GlobalExceptionHandler {
     private void activateDirectFieldAccess(DataBinder dataBinder) {
         dataBinder.initDirectFieldAccess();
     }
+
+    /**
+     * Rules of the services and constraints checked when the entities are flushed
+     */
+    @ExceptionHandler({
+            ConstraintViolationException.class, DataIntegrityViolationException.class, InvalidInputException.class
+    })
+    public void handleInvalidInput(Exception e, HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+    }
+
+    @ExceptionHandler(NotFoundException.class)
+    public void handleNotFound(NotFoundException e, HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.NOT_FOUND.value(), e.getMessage());
+    }
+
+    /**
+     * The entity was modified by another request since it was read
+     */
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public void handleConflict(Exception e, HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.CONFLICT.value(), e.getMessage());
+    }
+
+    /**
+     * A saturated bulkhead (or a connection that cannot be obtained) is temporary: the client can retry
+     */
+    @ExceptionHandler({BulkheadFullException.class, CannotCreateTransactionException.class})
+    public void handleUnavailable(Exception e, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), e.getMessage());
+    }
 }
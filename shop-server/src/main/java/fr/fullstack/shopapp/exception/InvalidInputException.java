@@ -0,0 +1,10 @@
+package fr.fullstack.shopapp.exception;
+
+/**
+ * The input of a write breaks a rule checked by a service, on top of its bean validation constraints
+ */
+public class InvalidInputException extends DomainException {
+    public InvalidInputException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package fr.fullstack.shopapp.exception;
+
+/**
+ * The requested shop, product, category or job does not exist
+ */
+public class NotFoundException extends DomainException {
+    public NotFoundException(String entityName, long id) {
+        super(entityName + " with id " + id + " not found");
+    }
+}
@@ -0,0 +1,378 @@
+package fr.fullstack.shopapp.generator;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.stream.LongStream;
+
+/**
+ * Replaces the shops, products and categories of the database by a synthetic dataset, then stops the application.
+ * Run it with the "generate" profile, the sizes are the generator.* properties:
+ * <pre>
+ * java -jar shop-app-exec.jar --spring.profiles.active=generate --generator.shops=100000 --generator.products=2000000
+ * </pre>
+ * The rows are streamed to Postgres with COPY in a single transaction. The dataset is skewed like a real one:
+ * a few shops own most of the products, a few categories hold most of the products, and the recent shops are
+ * the most numerous. Each row is derived from its id and the seed only, so a dataset can be generated again.
+ * The versions of the rows are the time of the generation, so that no ETag of a previous dataset is reused.
+ */
+@Component
+@Profile("generate")
+public class DatasetGenerator implements ApplicationRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetGenerator.class);
+
+    private static final String[] ADJECTIVES_EN = {
+            "Organic", "Fresh", "Artisanal", "Classic", "Premium", "Small", "Large", "Vintage", "Local", "Homemade"
+    };
+    private static final String[] ADJECTIVES_FR = {
+            "bio", "frais", "artisanal", "classique", "premium", "petit", "grand", "vintage", "local", "fait maison"
+    };
+    private static final String[] CATEGORIES = {
+            "Alimentation", "Boissons", "Vêtements", "Chaussures", "Livres", "Jouets", "Maison", "Jardin", "Beauté",
+            "Santé", "Sport", "Informatique", "Musique", "Bijoux", "Papeterie", "Animalerie", "Bricolage", "Décoration"
+    };
+    private static final String[] NOUNS_EN = {
+            "bread", "cheese", "coffee", "tea", "shirt", "book", "candle", "bag", "lamp", "chair", "soap", "jam"
+    };
+    private static final String[] NOUNS_FR = {
+            "Pain", "Fromage", "Café", "Thé", "Chemise", "Livre", "Bougie", "Sac", "Lampe", "Chaise", "Savon",
+            "Confiture"
+    };
+    private static final String[] SHOP_NAMES = {
+            "Martin", "Bernard", "Dubois", "Thomas", "Robert", "Richard", "Petit", "Durand", "Leroy", "Moreau",
+            "Simon", "Laurent", "Lefebvre", "Michel", "Garcia", "David", "Bertrand", "Roux", "Vincent", "Fournier"
+    };
+    // Sorted from the most to the least common, picked with a skewed distribution
+    private static final String[] SHOP_TYPES = {
+            "Boulangerie", "Épicerie", "Boutique", "Librairie", "Pharmacie", "Fleuriste", "Boucherie", "Fromagerie",
+            "Caviste", "Quincaillerie", "Bijouterie", "Droguerie", "Papeterie", "Torréfacteur", "Luthier"
+    };
+
+    private static final long SHOP_SEED = 0x5EED_0001L;
+    private static final long PRODUCT_SEED = 0x5EED_0002L;
+
+    // An opening hours id is derived from the shop id: at most 7 days with 2 slots per shop
+    private static final int MAX_SLOTS_PER_SHOP = 14;
+
+    @Value("${generator.categories:100}")
+    private int categories;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private DataSource dataSource;
+
+    // Share of the products with an english translation, all the products have a french one
+    @Value("${generator.english-ratio:0.5}")
+    private double englishRatio;
+
+    // Maximum number of categories of a product
+    @Value("${generator.max-categories-per-product:3}")
+    private int maxCategoriesPerProduct;
+
+    // Average number of days a shop is open in the week
+    @Value("${generator.opening-days:6}")
+    private int openingDays;
+
+    @Value("${generator.products:100000}")
+    private long products;
+
+    @Value("${generator.seed:42}")
+    private long seed;
+
+    @Value("${generator.shops:10000}")
+    private long shops;
+
+    // Version of all the generated shops, products and categories
+    private final long version = Instant.now().getEpochSecond();
+
+    // Exponent of the distribution of the products among the shops, 1 is uniform
+    @Value("${generator.skew:3}")
+    private double skew;
+
+    // Share of the shops closed for lunch, with two opening hours per day
+    @Value("${generator.split-days-ratio:0.3}")
+    private double splitDaysRatio;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                generate(connection);
+                connection.commit();
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            }
+            // Statistics of the planner, not run by autovacuum before the first queries
+            try (Statement statement = connection.createStatement()) {
+                connection.setAutoCommit(true);
+                statement.execute("ANALYZE");
+            }
+        }
+        LOGGER.info(
+                "Generated {} shops, {} products and {} categories in {} s",
+                shops, products, categories, (System.nanoTime() - start) / 1_000_000_000
+        );
+        System.exit(SpringApplication.exit(context, () -> 0));
+    }
+
+    private void generate(Connection connection) throws SQLException, IOException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(
+                    "TRUNCATE products_categories, products_localized_product, localized_product, products, "
+                            + "categories, shops_opening_hours, opening_hours, shop_stats, shops"
+            );
+            // Index all the shops again on the next start, see ShopIndexingService
+            statement.execute("DELETE FROM search_index_state");
+        }
+
+        copy(connection, "categories (id, name, version)", this::writeCategories);
+        copy(connection, "shops (id, created_at, in_vacations, name, version)", this::writeShops);
+        copy(connection, "opening_hours (id, close_at, close_minute, day, open_at, open_minute)",
+                this::writeOpeningHours);
+        copy(connection, "shops_opening_hours (shop_id, opening_hours_id)", this::writeShopsOpeningHours);
+        copy(connection, "products (id, price, shop_id, version)", this::writeProducts);
+        copy(connection, "localized_product (id, description, locale, name)", this::writeLocalizedProducts);
+        copy(connection, "products_localized_product (product_id, localized_product_id)",
+                this::writeProductsLocalizedProduct);
+        copy(connection, "products_categories (product_id, category_id)", this::writeProductsCategories);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(
+                    "INSERT INTO shop_stats (shop_id, nb_products, nb_categories) "
+                            + "SELECT s.id, COUNT(DISTINCT p.id), COUNT(DISTINCT pc.category_id) "
+                            + "FROM shops s "
+                            + "LEFT JOIN products p ON p.shop_id = s.id "
+                            + "LEFT JOIN products_categories pc ON pc.product_id = p.id "
+                            + "GROUP BY s.id "
+                            // The rows created with the shops by the shops_create_stats trigger
+                            + "ON CONFLICT (shop_id) DO UPDATE "
+                            + "SET nb_products = EXCLUDED.nb_products, nb_categories = EXCLUDED.nb_categories"
+            );
+            // The lists served before the generation are modified, see ChangeCounterService
+            statement.execute("UPDATE change_counters SET nb_changes = nb_changes + 1");
+            // Same as fill_tables.sql, the ids generated by the application start after the generated ones
+            statement.execute("SELECT setval('shops_id_seq', " + (shops + 1) + ")");
+            statement.execute("SELECT setval('opening_hours_shop_id_seq', "
+                    + ((shops + 1) * MAX_SLOTS_PER_SHOP + 1) + ")");
+            statement.execute("SELECT setval('products_id_seq', " + Math.max(products, 1) + ")");
+            statement.execute("SELECT setval('localized_product_id_seq', " + Math.max(2 * products, 1) + ")");
+            statement.execute("SELECT setval(c.oid, " + (categories + 1) + ") FROM pg_class c "
+                    + "WHERE c.relkind = 'S' AND c.relname IN ('category_seq', 'hibernate_sequence')");
+        }
+    }
+
+    private void copy(Connection connection, String table, RowsWriter rows) throws SQLException, IOException {
+        long start = System.nanoTime();
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new PGCopyOutputStream(pgConnection, "COPY " + table + " FROM STDIN"),
+                StandardCharsets.UTF_8
+        ), 1 << 16)) {
+            rows.write(writer);
+        }
+        LOGGER.info("Copied {} in {} ms", table, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // ROWS
+    // Text format of COPY: one line per row, columns separated by tabs, \N for null
+
+    void writeCategories(Writer writer) throws IOException {
+        for (int id = 1; id <= categories; id++) {
+            String name = CATEGORIES[(id - 1) % CATEGORIES.length];
+            writer.write(id + "\t" + (id > CATEGORIES.length ? name + " " + id : name) + "\t" + version + "\n");
+        }
+    }
+
+    void writeLocalizedProducts(Writer writer) throws IOException {
+        for (long id = 1; id <= products; id++) {
+            GeneratedProduct product = product(id);
+            writer.write(localizedProductId(id, 0) + "\t" + product.descriptionFr + "\tFR\t" + product.nameFr + "\n");
+            if (product.english) {
+                writer.write(localizedProductId(id, 1) + "\t" + product.descriptionEn + "\tEN\t" + product.nameEn
+                        + "\n");
+            }
+        }
+    }
+
+    void writeOpeningHours(Writer writer) throws IOException {
+        for (long id = 1; id <= shops; id++) {
+            GeneratedShop shop = shop(id);
+            for (int slot = 0; slot < shop.slots.length; slot++) {
+                int[] hours = shop.slots[slot];
+                // Minutes of the week of the opening hours, read by the list of the open shops
+                int dayStart = (hours[0] - 1) * 24 * 60;
+                writer.write(openingHoursId(id, slot) + "\t" + time(hours[2]) + "\t" + (dayStart + hours[2]) + "\t"
+                        + hours[0] + "\t" + time(hours[1]) + "\t" + (dayStart + hours[1]) + "\n");
+            }
+        }
+    }
+
+    void writeProducts(Writer writer) throws IOException {
+        for (long id = 1; id <= products; id++) {
+            GeneratedProduct product = product(id);
+            writer.write(id + "\t" + product.price + "\t" + (product.shopId == 0 ? "\\N" : product.shopId) + "\t"
+                    + version + "\n");
+        }
+    }
+
+    void writeProductsCategories(Writer writer) throws IOException {
+        for (long id = 1; id <= products; id++) {
+            for (long categoryId : product(id).categoryIds) {
+                writer.write(id + "\t" + categoryId + "\n");
+            }
+        }
+    }
+
+    void writeProductsLocalizedProduct(Writer writer) throws IOException {
+        for (long id = 1; id <= products; id++) {
+            writer.write(id + "\t" + localizedProductId(id, 0) + "\n");
+            if (product(id).english) {
+                writer.write(id + "\t" + localizedProductId(id, 1) + "\n");
+            }
+        }
+    }
+
+    void writeShops(Writer writer) throws IOException {
+        for (long id = 1; id <= shops; id++) {
+            GeneratedShop shop = shop(id);
+            writer.write(id + "\t" + shop.createdAt + "\t" + (shop.inVacations ? "t" : "f") + "\t" + shop.name + "\t"
+                    + version + "\n");
+        }
+    }
+
+    void writeShopsOpeningHours(Writer writer) throws IOException {
+        for (long id = 1; id <= shops; id++) {
+            int slots = shop(id).slots.length;
+            for (int slot = 0; slot < slots; slot++) {
+                writer.write(id + "\t" + openingHoursId(id, slot) + "\n");
+            }
+        }
+    }
+
+    // ENTITIES
+
+    private GeneratedProduct product(long id) {
+        SplittableRandom random = new SplittableRandom(seed ^ PRODUCT_SEED ^ (id * 0x9E3779B97F4A7C15L));
+        GeneratedProduct product = new GeneratedProduct();
+        // 2% of the products have no shop, the others are mostly in the first shops
+        product.shopId = random.nextInt(50) == 0 ? 0 : 1 + skewed(random, shops, skew);
+        // Log-normal price in cents, around 15 euros
+        product.price = Math.max(1, Math.round(Math.exp(7.3 + 1.1 * random.nextGaussian(0, 1))));
+
+        int adjective = random.nextInt(ADJECTIVES_FR.length);
+        int noun = skewed(random, NOUNS_FR.length, 2);
+        product.nameFr = NOUNS_FR[noun] + " " + ADJECTIVES_FR[adjective] + " " + id;
+        product.nameEn = ADJECTIVES_EN[adjective] + " " + NOUNS_EN[noun] + " " + id;
+        product.descriptionFr = NOUNS_FR[noun] + " " + ADJECTIVES_FR[adjective] + ", référence " + id;
+        product.descriptionEn = ADJECTIVES_EN[adjective] + " " + NOUNS_EN[noun] + ", reference " + id;
+        product.english = random.nextDouble() < englishRatio;
+
+        int nbCategories = Math.min(categories, random.nextInt(maxCategoriesPerProduct + 1));
+        // Distinct categories, the first ones being the most popular
+        product.categoryIds = LongStream.generate(() -> 1 + skewed(random, (long) categories, 2))
+                .distinct()
+                .limit(nbCategories)
+                .toArray();
+        return product;
+    }
+
+    private GeneratedShop shop(long id) {
+        SplittableRandom random = new SplittableRandom(seed ^ SHOP_SEED ^ (id * 0x9E3779B97F4A7C15L));
+        GeneratedShop shop = new GeneratedShop();
+        shop.name = SHOP_TYPES[skewed(random, SHOP_TYPES.length, 2)] + " "
+                + SHOP_NAMES[random.nextInt(SHOP_NAMES.length)];
+        // Over the last 15 years, most shops are recent
+        shop.createdAt = LocalDate.now().minusDays(15L * 365 - skewed(random, 15L * 365, 0.5));
+        shop.inVacations = random.nextInt(100) < 8;
+
+        // 5% of the shops have no opening hours, the others are open some consecutive days from monday
+        int days = random.nextInt(20) == 0 ? 0 : Math.max(1, Math.min(7, openingDays + random.nextInt(3) - 1));
+        boolean split = random.nextDouble() < splitDaysRatio;
+        int open = 7 * 60 + 30 * random.nextInt(5);
+        int close = 17 * 60 + 30 * random.nextInt(6);
+        shop.slots = new int[split ? 2 * days : days][];
+        for (int day = 1; day <= days; day++) {
+            if (split) {
+                shop.slots[2 * (day - 1)] = new int[]{day, open, 12 * 60};
+                shop.slots[2 * (day - 1) + 1] = new int[]{day, 14 * 60, close};
+            } else {
+                shop.slots[day - 1] = new int[]{day, open, close};
+            }
+        }
+        return shop;
+    }
+
+    private static long localizedProductId(long productId, int locale) {
+        return 2 * productId - 1 + locale;
+    }
+
+    private static long openingHoursId(long shopId, int slot) {
+        return shopId * MAX_SLOTS_PER_SHOP + slot;
+    }
+
+    /**
+     * Value in [0, bound) where the small values are the most frequent when the exponent is greater than 1
+     */
+    private static int skewed(SplittableRandom random, int bound, double exponent) {
+        return (int) skewed(random, (long) bound, exponent);
+    }
+
+    private static long skewed(SplittableRandom random, long bound, double exponent) {
+        return Math.min(bound - 1, (long) (Math.pow(random.nextDouble(), exponent) * bound));
+    }
+
+    private static String time(int minutes) {
+        return String.format("%02d:%02d:00", minutes / 60, minutes % 60);
+    }
+
+    private static class GeneratedProduct {
+        long[] categoryIds;
+        String descriptionEn;
+        String descriptionFr;
+        boolean english;
+        String nameEn;
+        String nameFr;
+        long price;
+        long shopId;
+    }
+
+    private static class GeneratedShop {
+        LocalDate createdAt;
+        boolean inVacations;
+        String name;
+        // day, opening and closing minute of the day
+        int[][] slots;
+    }
+
+    @FunctionalInterface
+    private interface RowsWriter {
+        void write(Writer writer) throws IOException;
+    }
+}
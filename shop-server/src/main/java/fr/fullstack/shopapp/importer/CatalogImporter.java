@@ -0,0 +1,85 @@
+package fr.fullstack.shopapp.importer;
+
+import fr.fullstack.shopapp.dto.BatchItemResult;
+import fr.fullstack.shopapp.dto.ImportProgress;
+import fr.fullstack.shopapp.service.ImportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Imports NDJSON files of shops and of products (see ImportService), then stops the application. Run it with the
+ * "import" profile, the shops are imported before the products:
+ * <pre>
+ * java -jar shop-app-exec.jar --spring.profiles.active=import --importer.shops=shops.ndjson --importer.products=products.ndjson
+ * </pre>
+ * The progress of each chunk and the rejected lines are logged. The exit status is 1 when a line was rejected.
+ */
+@Component
+@Profile("import")
+public class CatalogImporter implements ApplicationRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogImporter.class);
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private ImportService importService;
+
+    // Path of the products file, none by default
+    @Value("${importer.products:}")
+    private String products;
+
+    // Path of the shops file, none by default
+    @Value("${importer.shops:}")
+    private String shops;
+
+    private int failed;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!shops.isBlank()) {
+            try (InputStream in = open(shops)) {
+                importService.importShops(in, progress -> log(shops, progress));
+            }
+        }
+        if (!products.isBlank()) {
+            try (InputStream in = open(products)) {
+                importService.importProducts(in, progress -> log(products, progress));
+            }
+        }
+        int status = failed == 0 ? 0 : 1;
+        System.exit(SpringApplication.exit(context, () -> status));
+    }
+
+    private void log(String file, ImportProgress progress) {
+        for (BatchItemResult item : progress.getRejected()) {
+            LOGGER.warn("{}:{} rejected: {}", file, item.getIndex(), String.join(", ", item.getErrors()));
+        }
+        LOGGER.info(
+                "{}: {} lines read, {} imported, {} rejected in {} s ({} rows/s)",
+                file, progress.getLines(), progress.getSaved(), progress.getFailed(), progress.getDurationMs() / 1000,
+                Math.round(progress.getRowsPerSecond())
+        );
+        if (progress.isFinished()) {
+            failed += progress.getFailed();
+        }
+    }
+
+    private static InputStream open(String file) throws IOException {
+        return new BufferedInputStream(Files.newInputStream(Path.of(file)), 1 << 16);
+    }
+}
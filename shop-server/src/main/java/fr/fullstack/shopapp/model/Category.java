@@ -5,14 +5,24 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.search.engine.backend.types.Aggregable;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.GenericField;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
 @Table(name = "categories")
+// Second-level cache region, used when hibernate.cache.use_second_level_cache is enabled
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Category {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
+    // Indexed with the products, to filter them on a category and count them per category
+    @GenericField(aggregable = Aggregable.YES)
     private long id;
 
     @Size(min = 1, max = 255, message = "Name must be between 1 and 255 characters")
@@ -24,6 +34,13 @@ public class Category {
     @JsonIgnore
     private List<Product> products = new ArrayList<>();
 
+    // Incremented by every update, source of the ETag of the category (see CategoryController)
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    @JsonIgnore
+    private long version;
+
     public long getId() {
         return id;
     }
@@ -36,6 +53,10 @@ public class Category {
         return products;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public void setId(long id) {
         this.id = id;
     }
@@ -47,4 +68,8 @@ public class Category {
     public void setProducts(List<Product> products) {
         this.products = products;
     }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,32 @@
+package fr.fullstack.shopapp.model;
+
+import jakarta.persistence.*;
+
+/**
+ * Number of committed writes to a table, the weak ETag of the lists read from it
+ */
+@Entity
+@Table(name = "change_counters")
+public class ChangeCounter {
+    @Id
+    private String name;
+
+    @Column(name = "nb_changes", nullable = false)
+    private long nbChanges;
+
+    public String getName() {
+        return name;
+    }
+
+    public long getNbChanges() {
+        return nbChanges;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setNbChanges(long nbChanges) {
+        this.nbChanges = nbChanges;
+    }
+}
@@ -0,0 +1,106 @@
+package fr.fullstack.shopapp.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Deletion of a shop or of a category run in the background, polled by the client with its id
+ */
+@Entity
+@Table(name = "deletion_jobs")
+public class DeletionJob {
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "entity_id", nullable = false)
+    private long entityId;
+
+    @Column(name = "entity_type", nullable = false)
+    private String entityType;
+
+    @Column(columnDefinition = "text")
+    private String error;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "deletion_jobs_id_seq")
+    @SequenceGenerator(name = "deletion_jobs_id_seq", sequenceName = "deletion_jobs_id_seq", allocationSize = 1)
+    private long id;
+
+    // Instance of the application running the job, the only one to fail it when it is interrupted by a restart. Empty
+    // for the jobs created before it was recorded.
+    @Column(name = "instance_id")
+    @JsonIgnore
+    private String instanceId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private JobStatus status;
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getEntityId() {
+        return entityId;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public void setEntityId(long entityId) {
+        this.entityId = entityId;
+    }
+
+    public void setEntityType(String entityType) {
+        this.entityType = entityType;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+}
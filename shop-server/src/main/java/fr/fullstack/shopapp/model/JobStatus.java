@@ -0,0 +1,5 @@
+package fr.fullstack.shopapp.model;
+
+public enum JobStatus {
+    PENDING, RUNNING, DONE, FAILED
+}
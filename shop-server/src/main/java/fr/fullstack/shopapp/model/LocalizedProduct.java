@@ -14,7 +14,9 @@ public class LocalizedProduct {
     private String description;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // Pooled sequence: ids are reserved 50 at a time so that inserts can be sent in JDBC batches
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "localized_product_id_seq")
+    @SequenceGenerator(name = "localized_product_id_seq", sequenceName = "localized_product_id_seq", allocationSize = 50)
     private long id;
 
     @Column(nullable = false)
@@ -1,16 +1,23 @@
 package fr.fullstack.shopapp.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import fr.fullstack.shopapp.validation.ValidOpeningHours;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.LocalTime;
 
 @Entity
 @Table(name = "opening_hours")
+// The range index of open_minute and close_minute is created by OpeningHoursService
+// Second-level cache region, used when hibernate.cache.use_second_level_cache is enabled
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @ValidOpeningHours
 public class OpeningHoursShop {
     @Column(nullable = false)
@@ -18,6 +25,11 @@ public class OpeningHoursShop {
     @NotNull(message = "CloseAt may not be null")
     private LocalTime closeAt;
 
+    // Minute of the week (0 is monday 00:00) at which the shop closes, excluded
+    @Column(name = "close_minute")
+    @JsonIgnore
+    private Integer closeMinute;
+
     @Column(nullable = false)
     @NotNull(message = "Day may not be null")
     @Min(value = 1, message = "Day should not be less than 1")
@@ -34,10 +46,26 @@ public class OpeningHoursShop {
     @NotNull(message = "OpenAt may not be null")
     private LocalTime openAt;
 
+    // Minute of the week (0 is monday 00:00) at which the shop opens, included
+    @Column(name = "open_minute")
+    @JsonIgnore
+    private Integer openMinute;
+
+    /**
+     * @return the minute of the week of a day (1 is monday) and a time, the seconds are ignored
+     */
+    public static int minuteOfWeek(int day, LocalTime time) {
+        return (day - 1) * 24 * 60 + time.getHour() * 60 + time.getMinute();
+    }
+
     public LocalTime getCloseAt() {
         return closeAt;
     }
 
+    public Integer getCloseMinute() {
+        return closeMinute;
+    }
+
     public long getDay() {
         return day;
     }
@@ -50,6 +78,10 @@ public class OpeningHoursShop {
         return openAt;
     }
 
+    public Integer getOpenMinute() {
+        return openMinute;
+    }
+
     public void setCloseAt(LocalTime closeAt) {
         this.closeAt = closeAt;
     }
@@ -65,4 +97,11 @@ public class OpeningHoursShop {
     public void setOpenAt(LocalTime openAt) {
         this.openAt = openAt;
     }
+
+    @PrePersist
+    @PreUpdate
+    private void computeMinutes() {
+        openMinute = minuteOfWeek(day, openAt);
+        closeMinute = minuteOfWeek(day, closeAt);
+    }
 }
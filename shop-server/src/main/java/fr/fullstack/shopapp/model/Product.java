@@ -1,16 +1,35 @@
 package fr.fullstack.shopapp.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.PositiveOrZero;
 import jakarta.validation.constraints.Size;
+import fr.fullstack.shopapp.repository.search.LocalizedProductBinder;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.search.engine.backend.types.Aggregable;
+import org.hibernate.search.engine.backend.types.Sortable;
+import org.hibernate.search.mapper.pojo.automaticindexing.ReindexOnUpdate;
+import org.hibernate.search.mapper.pojo.bridge.mapping.annotation.PropertyBinderRef;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.GenericField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.IndexedEmbedded;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.IndexingDependency;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.PropertyBinding;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "products_external_updated_at_idx", columnList = "external_updated_at"),
+        @Index(name = "products_shop_id_id_idx", columnList = "shop_id, id")
+})
+@Indexed(index = "products")
 public class Product {
+    // Only the ids of the categories are indexed, to filter the search on a category
+    @IndexedEmbedded(includePaths = "id")
     @ManyToMany
     @JoinTable(
             name = "products_categories",
@@ -18,22 +37,45 @@ public class Product {
             inverseJoinColumns = @JoinColumn(name = "category_id"))
     private List<Category> categories = new ArrayList<>();
 
+    // Time of the last write not seen by Hibernate Search (imports, sql scripts), set by the imports and triggers and
+    // cleared once the product is indexed by ProductIndexingService
+    @Column(name = "external_updated_at", insertable = false, updatable = false)
+    @JsonIgnore
+    private Instant externalUpdatedAt;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // Pooled sequence: ids are reserved 50 at a time so that inserts can be sent in JDBC batches
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_id_seq")
+    @SequenceGenerator(name = "products_id_seq", sequenceName = "products_id_seq", allocationSize = 50)
+    @GenericField(sortable = Sortable.YES)
     private long id;
 
+    // The localized products have no link to their product: their changes are indexed by ProductService, which adds
+    // the product to the indexing plan
     @OneToMany(cascade = {CascadeType.ALL}, orphanRemoval = true)
+    @PropertyBinding(binder = @PropertyBinderRef(type = LocalizedProductBinder.class))
+    @IndexingDependency(reindexOnUpdate = ReindexOnUpdate.SHALLOW)
     @Size(min = 1, message = "At least one name and one description must be provided")
     private List<@Valid LocalizedProduct> localizedProduct = new ArrayList<>();
 
     @Column(nullable = false)
     @PositiveOrZero(message = "Price must be positive")
     @NotNull(message = "Price may not be null")
+    // Aggregated in price buckets by the facets
+    @GenericField(aggregable = Aggregable.YES)
     private int price;
 
     @ManyToOne
+    @IndexedEmbedded(includePaths = "id")
     private Shop shop;
 
+    // Incremented by every update, source of the ETag of the product (see ProductController)
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    @JsonIgnore
+    private long version;
+
     public List<Category> getCategories() {
         return categories;
     }
@@ -54,6 +96,10 @@ public class Product {
         return shop;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public void setCategories(List<Category> categories) {
         this.categories = categories;
     }
@@ -73,4 +119,8 @@ public class Product {
     public void setShop(Shop shop) {
         this.shop = shop;
     }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,34 @@
+package fr.fullstack.shopapp.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * A search index filled by a mass indexing: the index is filled again on the next start when its row is missing
+ * (first start, data replaced by the dataset generator)
+ */
+@Entity
+@Table(name = "search_index_state")
+public class SearchIndexState {
+    @Column(name = "mass_indexed_at", nullable = false)
+    private Instant massIndexedAt;
+
+    @Id
+    private String name;
+
+    public Instant getMassIndexedAt() {
+        return massIndexedAt;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setMassIndexedAt(Instant massIndexedAt) {
+        this.massIndexedAt = massIndexedAt;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -2,34 +2,59 @@ package fr.fullstack.shopapp.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import fr.fullstack.shopapp.config.SearchAnalysisConfigurer;
 import fr.fullstack.shopapp.validation.ConsistentOpeningHours;
 import jakarta.persistence.*;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
-import org.hibernate.annotations.Formula;
+import org.hibernate.annotations.SecondaryRow;
+import org.hibernate.search.engine.backend.types.Projectable;
+import org.hibernate.search.engine.backend.types.Sortable;
 import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
 import org.hibernate.search.mapper.pojo.mapping.definition.annotation.GenericField;
 import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
-import org.springframework.data.elasticsearch.annotations.Document;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "shops")
-@Indexed(index = "idx_shops")
+@Table(name = "shops", indexes = {
+        @Index(name = "shops_name_idx", columnList = "name, id"),
+        @Index(name = "shops_created_at_idx", columnList = "created_at, id"),
+        @Index(name = "shops_in_vacations_created_at_idx", columnList = "in_vacations, created_at"),
+        @Index(name = "shops_external_updated_at_idx", columnList = "external_updated_at")
+})
+@Indexed(index = "shops")
 @ConsistentOpeningHours
-@Document(indexName = "shops")
+@SecondaryTable(
+        name = "shop_stats",
+        pkJoinColumns = @PrimaryKeyJoinColumn(name = "shop_id"),
+        indexes = @Index(name = "shop_stats_nb_products_idx", columnList = "nb_products, shop_id")
+)
+// shop_stats is maintained by ShopStatsService, never written by Hibernate
+@SecondaryRow(table = "shop_stats", owned = false)
 public class Shop {
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     @JsonFormat(pattern = "yyyy-MM-dd")
+    @GenericField
     private LocalDate createdAt;
 
+    // Time of the last write not seen by Hibernate Search (sql scripts, imports), set by a trigger and cleared once the
+    // shop is indexed by ShopIndexingService
+    @Column(name = "external_updated_at", insertable = false, updatable = false)
+    @JsonIgnore
+    private Instant externalUpdatedAt;
+
     @Id
+    @GenericField(sortable = Sortable.YES)
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "shops_id_seq")
     @SequenceGenerator(name = "shops_id_seq",  sequenceName = "shops_id_seq")
     private long id;
@@ -42,16 +67,23 @@ public class Shop {
     @Column(nullable = false)
     @Size(min = 1, max = 255, message = "Name must be between 1 and 255 characters")
     @NotNull(message = "Name may not be null")
-    @FullTextField
+    @FullTextField(projectable = Projectable.YES)
+    // Beginnings of the words of the name, matched by the suggestions of GET /shops/suggest
+    @FullTextField(
+            name = "namePrefix",
+            analyzer = SearchAnalysisConfigurer.NAME_PREFIX,
+            searchAnalyzer = SearchAnalysisConfigurer.NAME_PREFIX_SEARCH
+    )
     private String name;
 
-    @Formula(value = "(SELECT COUNT(*) FROM products p WHERE p.shop_id = id)")
-    private long nbProducts;
+    @Column(name = "nb_products", table = "shop_stats", insertable = false, updatable = false)
+    private Long nbProducts;
 
-    @Transient
-    private int nbCategory;
+    @Column(name = "nb_categories", table = "shop_stats", insertable = false, updatable = false)
+    private Integer nbCategory;
 
     @OneToMany(cascade = {CascadeType.ALL})
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @Valid
     private List<OpeningHoursShop> openingHours = new ArrayList<>();
 
@@ -59,6 +91,13 @@ public class Shop {
     @JsonIgnore
     private List<Product> products = new ArrayList<>();
 
+    // Incremented by every update, source of the ETag of the shop (see ShopController)
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    @JsonIgnore
+    private long version;
+
     public LocalDate getCreatedAt() {
         return createdAt;
     }
@@ -76,7 +115,7 @@ public class Shop {
     }
 
     public long getNbProducts() {
-        return nbProducts;
+        return nbProducts == null ? 0 : nbProducts;
     }
 
     public List<OpeningHoursShop> getOpeningHours() {
@@ -87,16 +126,12 @@ public class Shop {
         return this.products;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public int getNbCategory() {
-        List<Category> distinctCategories = new ArrayList<>();
-        for(Product product : getProducts()) {
-            for (Category category : product.getCategories()) {
-                if (!distinctCategories.contains(category)) {
-                    distinctCategories.add(category);
-                }
-            }
-        }
-        return distinctCategories.size();
+        return nbCategory == null ? 0 : nbCategory;
     }
 
     public void setId(long id) {
@@ -123,4 +158,8 @@ public class Shop {
         this.products = products;
     }
 
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
 }
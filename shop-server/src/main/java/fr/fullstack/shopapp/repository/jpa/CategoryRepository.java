@@ -1,10 +1,30 @@
 package fr.fullstack.shopapp.repository.jpa;
 
+import fr.fullstack.shopapp.dto.CategoryView;
 import fr.fullstack.shopapp.model.Category;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface CategoryRepository extends JpaRepository<Category, Long> {
-    Page<Category> findByOrderByIdAsc(Pageable pageable);
+    @Query("SELECT c.version FROM Category c WHERE c.id = ?1")
+    Optional<Long> findVersionById(long id);
+
+    @Query("SELECT c.id FROM Category c WHERE c.id IN ?1")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    // READ MODELS
+    @Query("SELECT new fr.fullstack.shopapp.dto.CategoryView(c.id, c.name) FROM Category c WHERE c.id = ?1")
+    Optional<CategoryView> findViewById(long id);
+
+    @Query(
+            value = "SELECT new fr.fullstack.shopapp.dto.CategoryView(c.id, c.name) FROM Category c ORDER BY c.id",
+            countQuery = "SELECT COUNT(c) FROM Category c"
+    )
+    Page<CategoryView> findViews(Pageable pageable);
 }
@@ -0,0 +1,24 @@
+package fr.fullstack.shopapp.repository.jpa;
+
+import fr.fullstack.shopapp.model.ChangeCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+public interface ChangeCounterRepository extends JpaRepository<ChangeCounter, String> {
+    @Modifying
+    @Query(
+            value = "INSERT INTO change_counters (name, nb_changes) SELECT ?1, 0 "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM change_counters WHERE name = ?1)",
+            nativeQuery = true
+    )
+    @Transactional
+    void createCounter(String name);
+
+    @Modifying
+    @Query(value = "UPDATE change_counters SET nb_changes = nb_changes + 1 WHERE name IN ?1", nativeQuery = true)
+    void increment(Collection<String> names);
+}
@@ -0,0 +1,16 @@
+package fr.fullstack.shopapp.repository.jpa;
+
+import fr.fullstack.shopapp.model.DeletionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+
+public interface DeletionJobRepository extends JpaRepository<DeletionJob, Long> {
+    // The jobs of the other instances are left running, also the jobs created before the instance was recorded
+    @Modifying
+    @Query("UPDATE DeletionJob j SET j.status = fr.fullstack.shopapp.model.JobStatus.FAILED, j.error = ?2, "
+            + "j.finishedAt = ?3 WHERE j.finishedAt IS NULL AND (j.instanceId = ?1 OR j.instanceId IS NULL)")
+    int failUnfinished(String instanceId, String error, Instant finishedAt);
+}
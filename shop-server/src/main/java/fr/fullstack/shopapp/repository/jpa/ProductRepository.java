@@ -4,11 +4,38 @@ import fr.fullstack.shopapp.model.Product;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product> {
     Page<Product> findByOrderByIdAsc(Pageable pageable);
 
+    // Version of the product, of its shop with its stats and of its categories, without loading them
+    @Query(
+            value = "SELECT p.version || '-' || COALESCE(s.id || '.' || s.version || '.' "
+                    + "|| COALESCE(st.nb_products, 0) || '.' || COALESCE(st.nb_categories, 0), '') || '-' || ("
+                    + "SELECT COUNT(*) || '.' || COALESCE(SUM(c.version), 0) FROM products_categories pc "
+                    + "JOIN categories c ON c.id = pc.category_id WHERE pc.product_id = p.id) "
+                    + "FROM products p LEFT JOIN shops s ON s.id = p.shop_id "
+                    + "LEFT JOIN shop_stats st ON st.shop_id = p.shop_id WHERE p.id = ?1",
+            nativeQuery = true
+    )
+    Optional<String> findETagById(long id);
+
+    List<Product> findByShopIdIn(Collection<Long> shopIds);
+
+    @Query("SELECT p.id FROM Product p JOIN p.categories c WHERE c.id = ?1")
+    List<Long> findIdsByCategoryId(long categoryId);
+
+    @Query("SELECT p.id FROM Product p WHERE p.shop.id = ?1")
+    List<Long> findIdsByShopId(long shopId);
+
     @Query(value = "SELECT * FROM Products WHERE shop_id = ?1", nativeQuery = true)
     Page<Product> findByShop(Long shopId, Pageable pageable);
 
@@ -16,4 +43,175 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
             + "products_categories pc WHERE pc.category_id = ?2)",
            nativeQuery = true)
     Page<Product> findByShopAndCategory(Long shopId, Long categoryId, Pageable pageable);
+
+    // READ MODELS
+    interface CategoryRow {
+        long getId();
+
+        String getName();
+
+        long getProductId();
+    }
+
+    // Count of the products of a category (allPrices = 1), of a price bucket (allCategories = 1) or of the shop (both)
+    interface FacetRow {
+        int getAllCategories();
+
+        int getAllPrices();
+
+        Integer getBucket();
+
+        Long getCategoryId();
+
+        String getCategoryName();
+
+        long getCount();
+    }
+
+    interface LocalizedProductRow {
+        String getDescription();
+
+        long getId();
+
+        String getLocale();
+
+        String getName();
+
+        long getProductId();
+    }
+
+    @Query("SELECT p.id AS productId, c.id AS id, c.name AS name "
+            + "FROM Product p JOIN p.categories c WHERE p.id IN ?1 ORDER BY c.id")
+    List<CategoryRow> findCategoriesByProductIdIn(Collection<Long> productIds);
+
+    // The counts per category, per price bucket and in total are read with one scan of the products of the shop. A
+    // product is counted once per grouping, though the join repeats it once per category. The aliases are quoted to
+    // keep their case.
+    @Query(
+            value = "SELECT f.category_id AS \"categoryId\", f.category_name AS \"categoryName\", "
+                    + "f.bucket AS \"bucket\", COUNT(DISTINCT f.id) AS \"count\", "
+                    + "GROUPING(f.category_id) AS \"allCategories\", GROUPING(f.bucket) AS \"allPrices\" "
+                    + "FROM (SELECT p.id, p.price / ?2 AS bucket, c.id AS category_id, c.name AS category_name "
+                    + "FROM products p LEFT JOIN products_categories pc ON pc.product_id = p.id "
+                    + "LEFT JOIN categories c ON c.id = pc.category_id WHERE p.shop_id = ?1) f "
+                    + "GROUP BY GROUPING SETS ((f.category_id, f.category_name), (f.bucket), ())",
+            nativeQuery = true
+    )
+    List<FacetRow> findFacetsByShopId(long shopId, int priceInterval);
+
+    @Query("SELECT p.id AS productId, l.description AS description, l.id AS id, l.locale AS locale, l.name AS name "
+            + "FROM Product p JOIN p.localizedProduct l WHERE p.id IN ?1 ORDER BY l.id")
+    List<LocalizedProductRow> findLocalizedProductsByProductIdIn(Collection<Long> productIds);
+
+    // One row per product: the localized product of the locale, or the french one which is always provided
+    @Query("SELECT p.id AS productId, l.description AS description, l.id AS id, l.locale AS locale, l.name AS name "
+            + "FROM Product p JOIN p.localizedProduct l WHERE p.id IN ?1 AND (l.locale = ?2 OR l.locale = 'FR' AND "
+            + "NOT EXISTS (SELECT 1 FROM Product p2 JOIN p2.localizedProduct l2 WHERE p2.id = p.id AND l2.locale = ?2))")
+    List<LocalizedProductRow> findLocalizedProductsByProductIdInAndLocale(Collection<Long> productIds, String locale);
+
+    // The localized products are part of the product but do not make the product row dirty
+    @Modifying
+    @Query("UPDATE Product p SET p.version = p.version + 1 WHERE p.id IN ?1")
+    void incrementVersions(Collection<Long> ids);
+
+    // ID SEQUENCES
+    // The ids were generated from hibernate_sequence before the pooled sequences, which ddl-auto creates from 1 on an
+    // existing database. The sequences are moved after the existing ids, never back.
+    @Query(
+            value = "SELECT setval('products_id_seq', GREATEST("
+                    + "(SELECT COALESCE(MAX(id), 0) FROM products), (SELECT last_value FROM products_id_seq)))",
+            nativeQuery = true
+    )
+    @Transactional
+    long alignIdSequence();
+
+    @Query(
+            value = "SELECT setval('localized_product_id_seq', GREATEST("
+                    + "(SELECT COALESCE(MAX(id), 0) FROM localized_product), "
+                    + "(SELECT last_value FROM localized_product_id_seq)))",
+            nativeQuery = true
+    )
+    @Transactional
+    long alignLocalizedProductIdSequence();
+
+    // SEARCH
+    // The writes of the application are indexed through the outbox of Hibernate Search and ProductIndexingService. The
+    // triggers stamp the products changed by the other writes (sql scripts, manual fixes), including the changes of
+    // their categories and localized products, the connections of the application are told apart by their
+    // application_name (see application.properties), given as argument of the triggers installed by
+    // ProductIndexingService. Also in create_tables.sql.
+    @Modifying
+    @Query(
+            value = "CREATE OR REPLACE FUNCTION products_set_external_updated_at() RETURNS trigger AS $$ "
+                    + "BEGIN "
+                    + "IF current_setting('application_name') <> TG_ARGV[0] THEN "
+                    + "NEW.external_updated_at = clock_timestamp(); "
+                    + "END IF; "
+                    + "RETURN NEW; "
+                    + "END; "
+                    + "$$ LANGUAGE plpgsql",
+            nativeQuery = true
+    )
+    @Transactional
+    void createExternalUpdateFunction();
+
+    // Rows of the join tables products_categories and products_localized_product
+    @Modifying
+    @Query(
+            value = "CREATE OR REPLACE FUNCTION products_set_external_updated_at_from_join() RETURNS trigger AS $$ "
+                    + "BEGIN "
+                    + "IF current_setting('application_name') <> TG_ARGV[0] THEN "
+                    + "IF TG_OP <> 'INSERT' THEN "
+                    + "UPDATE products SET external_updated_at = clock_timestamp() WHERE id = OLD.product_id; "
+                    + "END IF; "
+                    + "IF TG_OP <> 'DELETE' THEN "
+                    + "UPDATE products SET external_updated_at = clock_timestamp() WHERE id = NEW.product_id; "
+                    + "END IF; "
+                    + "END IF; "
+                    + "RETURN NULL; "
+                    + "END; "
+                    + "$$ LANGUAGE plpgsql",
+            nativeQuery = true
+    )
+    @Transactional
+    void createJoinExternalUpdateFunction();
+
+    @Modifying
+    @Query(
+            value = "CREATE OR REPLACE FUNCTION localized_product_set_external_updated_at() RETURNS trigger AS $$ "
+                    + "BEGIN "
+                    + "IF current_setting('application_name') <> TG_ARGV[0] THEN "
+                    + "UPDATE products SET external_updated_at = clock_timestamp() WHERE id IN ("
+                    + "SELECT product_id FROM products_localized_product WHERE localized_product_id = NEW.id); "
+                    + "END IF; "
+                    + "RETURN NULL; "
+                    + "END; "
+                    + "$$ LANGUAGE plpgsql",
+            nativeQuery = true
+    )
+    @Transactional
+    void createLocalizedProductExternalUpdateFunction();
+
+    @Query(
+            value = "SELECT id FROM products WHERE external_updated_at IS NOT NULL ORDER BY external_updated_at "
+                    + "LIMIT ?1",
+            nativeQuery = true
+    )
+    List<Long> findExternallyUpdatedIds(int limit);
+
+    // Also run for a product written again since it was read: it is indexed after this commit, from its new row
+    @Modifying
+    @Query(value = "UPDATE products SET external_updated_at = NULL WHERE id IN ?1", nativeQuery = true)
+    void clearExternalUpdates(Collection<Long> ids);
+
+    // NESTED RELATIONS
+    // Set-based updates: the persistence context is flushed before and cleared after, so that no stale product stays
+    // in the first-level cache
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM products_categories WHERE category_id = ?1", nativeQuery = true)
+    int removeCategory(long categoryId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE products SET shop_id = NULL WHERE shop_id = ?1", nativeQuery = true)
+    int removeShop(long shopId);
 }
@@ -0,0 +1,23 @@
+package fr.fullstack.shopapp.repository.jpa;
+
+import fr.fullstack.shopapp.model.Product;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class ProductSpecifications {
+    private ProductSpecifications() {
+    }
+
+    public static Specification<Product> withFilters(Optional<Long> shopId, Optional<Long> categoryId) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            shopId.ifPresent(id -> predicates.add(cb.equal(root.get("shop").get("id"), id)));
+            categoryId.ifPresent(id -> predicates.add(cb.equal(root.join("categories").get("id"), id)));
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+}
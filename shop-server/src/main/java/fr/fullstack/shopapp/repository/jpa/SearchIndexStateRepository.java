@@ -0,0 +1,7 @@
+package fr.fullstack.shopapp.repository.jpa;
+
+import fr.fullstack.shopapp.model.SearchIndexState;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface SearchIndexStateRepository extends JpaRepository<SearchIndexState, String> {
+}
@@ -1,50 +1,188 @@
 package fr.fullstack.shopapp.repository.jpa;
 
+import fr.fullstack.shopapp.dto.ShopSuggestion;
 import fr.fullstack.shopapp.model.Shop;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
-public interface ShopRepository extends JpaRepository<Shop, Long> {
-    Page<Shop> findByCreatedAtBetween(LocalDate dateStart, LocalDate dateEnd, Pageable pageable);
+public interface ShopRepository extends JpaRepository<Shop, Long>, JpaSpecificationExecutor<Shop> {
+    // Version of the shop and of its stats, without loading the shop and its opening hours
+    @Query(
+            value = "SELECT s.version || '-' || COALESCE(st.nb_products, 0) || '-' || COALESCE(st.nb_categories, 0) "
+                    + "FROM shops s LEFT JOIN shop_stats st ON st.shop_id = s.id WHERE s.id = ?1",
+            nativeQuery = true
+    )
+    Optional<String> findETagById(long id);
 
-    Page<Shop> findByCreatedAtGreaterThan(LocalDate date, Pageable pageable);
+    @Query("SELECT s.id FROM Shop s WHERE s.id IN ?1")
+    List<Long> findExistingIds(Collection<Long> ids);
 
-    Page<Shop> findByCreatedAtLessThan(LocalDate date, Pageable pageable);
+    // OPENING HOURS
+    // EXISTS rather than a join: the opening hours written in SQL are not validated and may overlap, a shop with two
+    // opening hours containing the minute is still listed once
+    @Query(
+            value = "SELECT s.id FROM shops s "
+                    + "WHERE s.id > ?2 AND NOT s.in_vacations AND EXISTS ("
+                    + "SELECT 1 FROM shops_opening_hours soh JOIN opening_hours o ON o.id = soh.opening_hours_id "
+                    + "WHERE soh.shop_id = s.id AND int4range(o.open_minute, o.close_minute) @> ?1"
+                    + ") ORDER BY s.id LIMIT ?3",
+            nativeQuery = true
+    )
+    List<Long> findOpenIds(int minuteOfWeek, long afterId, int limit);
 
-    // FILTERS
-    Page<Shop> findByInVacations(boolean inVacations, Pageable pageable);
+    // Range index of PostgreSQL: the opening hours containing a minute are found without scanning the others
+    @Modifying
+    @Query(
+            value = "CREATE INDEX IF NOT EXISTS opening_hours_minutes_idx ON opening_hours "
+                    + "USING gist (int4range(open_minute, close_minute))",
+            nativeQuery = true
+    )
+    @Transactional
+    void createMinutesIndex();
 
-    Page<Shop> findByInVacationsAndCreatedAtGreaterThan(boolean inVacations, LocalDate date, Pageable pageable);
+    @Modifying
+    @Query(
+            value = "UPDATE opening_hours SET "
+                    + "open_minute = (day - 1) * 1440 + EXTRACT(HOUR FROM open_at) * 60 "
+                    + "+ EXTRACT(MINUTE FROM open_at), "
+                    + "close_minute = (day - 1) * 1440 + EXTRACT(HOUR FROM close_at) * 60 "
+                    + "+ EXTRACT(MINUTE FROM close_at) "
+                    + "WHERE open_minute IS NULL OR close_minute IS NULL",
+            nativeQuery = true
+    )
+    int fillMissingMinutes();
 
-    Page<Shop> findByInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
-            boolean inVacations, LocalDate dateStart,
-            LocalDate dateEnd, Pageable pageable
-    );
+    // READ MODELS
+    interface OpeningHoursRow {
+        LocalTime getCloseAt();
 
-    Page<Shop> findByInVacationsAndCreatedAtLessThan(boolean inVacations, LocalDate date, Pageable pageable);
+        int getDay();
 
-    Page<Shop> findByOrderByCreatedAtAsc(Pageable pageable);
+        long getId();
 
-    Page<Shop> findByOrderByIdAsc(Pageable pageable);
+        LocalTime getOpenAt();
 
-    // SORT
-    Page<Shop> findByOrderByNameAsc(Pageable pageable);
+        long getShopId();
+    }
 
+    @Query("SELECT s.id AS shopId, o.closeAt AS closeAt, o.day AS day, o.id AS id, o.openAt AS openAt "
+            + "FROM Shop s JOIN s.openingHours o WHERE s.id IN ?1 ORDER BY o.day, o.openAt")
+    List<OpeningHoursRow> findOpeningHoursByShopIdIn(Collection<Long> shopIds);
+
+    // Names of all the shops, loaded in the index of the suggestions used without Elasticsearch
+    @Query("SELECT new fr.fullstack.shopapp.dto.ShopSuggestion(s.id, s.name) FROM Shop s")
+    List<ShopSuggestion> findSuggestions();
+
+    // SEARCH
+    // The writes of the application are indexed through the outbox of Hibernate Search. The trigger stamps the other
+    // writes (sql scripts, manual fixes) with the time of the statement, the connections of the application are told
+    // apart by their application_name (see application.properties), given as argument of the trigger installed by
+    // ShopIndexingService. Also in create_tables.sql.
+    @Modifying
     @Query(
-            value = "SELECT *,"
-                    + "(SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) as nbProducts, "
-                    + "(SELECT COUNT(DISTINCT pc.category_id) FROM products_categories pc WHERE pc.product_id IN "
-                    + "(SELECT p.id FROM products p WHERE p.shop_id = s.id)) as nbCategories "
-                    + "FROM shops s "
-                    + "ORDER BY (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) DESC",
-            countQuery = "SELECT * "
+            value = "CREATE OR REPLACE FUNCTION shops_set_external_updated_at() RETURNS trigger AS $$ "
+                    + "BEGIN "
+                    + "IF current_setting('application_name') <> TG_ARGV[0] THEN "
+                    + "NEW.external_updated_at = clock_timestamp(); "
+                    + "END IF; "
+                    + "RETURN NEW; "
+                    + "END; "
+                    + "$$ LANGUAGE plpgsql",
+            nativeQuery = true
+    )
+    @Transactional
+    void createExternalUpdateFunction();
+
+    @Query(
+            value = "SELECT id FROM shops WHERE external_updated_at IS NOT NULL ORDER BY external_updated_at LIMIT ?1",
+            nativeQuery = true
+    )
+    List<Long> findExternallyUpdatedIds(int limit);
+
+    // Also run for a shop written again since it was read: its indexing is done after this commit, from its new row
+    @Modifying
+    @Query(value = "UPDATE shops SET external_updated_at = NULL WHERE id IN ?1", nativeQuery = true)
+    void clearExternalUpdates(Collection<Long> ids);
+
+    // STATS
+    // Every shop has its stats row, also the shops inserted outside the application, so that the listing sorted by
+    // nbProducts is an inner join read from shop_stats_nb_products_idx. Also in create_tables.sql.
+    @Modifying
+    @Query(
+            value = "CREATE OR REPLACE FUNCTION shops_create_stats() RETURNS trigger AS $$ "
+                    + "BEGIN "
+                    + "INSERT INTO shop_stats (shop_id, nb_products, nb_categories) VALUES (NEW.id, 0, 0) "
+                    + "ON CONFLICT (shop_id) DO NOTHING; "
+                    + "RETURN NULL; "
+                    + "END; "
+                    + "$$ LANGUAGE plpgsql",
+            nativeQuery = true
+    )
+    @Transactional
+    void createStatsFunction();
+
+    @Modifying
+    @Query(
+            value = "CREATE OR REPLACE TRIGGER shops_create_stats AFTER INSERT ON shops "
+                    + "FOR EACH ROW EXECUTE FUNCTION shops_create_stats()",
+            nativeQuery = true
+    )
+    @Transactional
+    void createStatsTrigger();
+
+    @Modifying
+    @Query(
+            value = "INSERT INTO shop_stats (shop_id, nb_products, nb_categories) VALUES (?1, 0, 0) "
+                    + "ON CONFLICT (shop_id) DO NOTHING",
+            nativeQuery = true
+    )
+    void createStats(long shopId);
+
+    @Modifying
+    @Query(
+            value = "INSERT INTO shop_stats (shop_id, nb_products, nb_categories) "
+                    + "SELECT s.id, COUNT(DISTINCT p.id), COUNT(DISTINCT pc.category_id) "
                     + "FROM shops s "
-                    + "ORDER BY (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) DESC",
+                    + "LEFT JOIN products p ON p.shop_id = s.id "
+                    + "LEFT JOIN products_categories pc ON pc.product_id = p.id "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM shop_stats st WHERE st.shop_id = s.id) "
+                    + "GROUP BY s.id",
+            nativeQuery = true
+    )
+    int createMissingStats();
+
+    @Modifying
+    @Query(value = "DELETE FROM shop_stats WHERE shop_id = ?1", nativeQuery = true)
+    void deleteStats(long shopId);
+
+    @Query(
+            value = "SELECT DISTINCT p.shop_id FROM products p "
+                    + "JOIN products_categories pc ON pc.product_id = p.id "
+                    + "WHERE pc.category_id = ?1 AND p.shop_id IS NOT NULL",
+            nativeQuery = true
+    )
+    List<Long> findShopIdsByCategory(long categoryId);
+
+    @Modifying
+    @Query(value = "UPDATE shop_stats SET nb_products = nb_products + ?2 WHERE shop_id = ?1", nativeQuery = true)
+    void incrementNbProducts(long shopId, long delta);
+
+    @Modifying
+    @Query(
+            value = "UPDATE shop_stats st SET nb_categories = ("
+                    + "SELECT COUNT(DISTINCT pc.category_id) FROM products p "
+                    + "JOIN products_categories pc ON pc.product_id = p.id "
+                    + "WHERE p.shop_id = st.shop_id) "
+                    + "WHERE st.shop_id IN ?1",
             nativeQuery = true
     )
-    Page<Shop> findByOrderByNbProductsAsc(Pageable pageable);
+    void refreshNbCategories(Collection<Long> shopIds);
 }
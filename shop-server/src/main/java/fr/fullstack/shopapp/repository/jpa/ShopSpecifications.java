@@ -0,0 +1,41 @@
+package fr.fullstack.shopapp.repository.jpa;
+
+import fr.fullstack.shopapp.model.Shop;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class ShopSpecifications {
+    private ShopSpecifications() {
+    }
+
+    /**
+     * Every shop has a row in shop_stats, created by the shops_create_stats trigger on insert. This predicate only lets
+     * the database turn the outer join into an inner join, so that an order by nbProducts is read from
+     * shop_stats_nb_products_idx instead of sorting all the shops.
+     */
+    public static Specification<Shop> withStats() {
+        return (root, query, cb) -> cb.isNotNull(root.get("nbProducts"));
+    }
+
+    /**
+     * Build the where clause of the shop listing, every present filter is added to the same query
+     */
+    public static Specification<Shop> withFilters(
+            Optional<Boolean> inVacations,
+            Optional<LocalDate> createdAfter,
+            Optional<LocalDate> createdBefore
+    ) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            inVacations.ifPresent(value -> predicates.add(cb.equal(root.get("inVacations"), value)));
+            createdAfter.ifPresent(date -> predicates.add(cb.greaterThan(root.get("createdAt"), date)));
+            createdBefore.ifPresent(date -> predicates.add(cb.lessThan(root.get("createdAt"), date)));
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+}
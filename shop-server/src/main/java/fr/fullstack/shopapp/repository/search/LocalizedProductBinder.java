@@ -0,0 +1,92 @@
+package fr.fullstack.shopapp.repository.search;
+
+import fr.fullstack.shopapp.config.SearchAnalysisConfigurer;
+import fr.fullstack.shopapp.model.Locale;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import org.hibernate.search.engine.backend.document.DocumentElement;
+import org.hibernate.search.engine.backend.document.IndexFieldReference;
+import org.hibernate.search.engine.backend.types.dsl.IndexFieldTypeFactory;
+import org.hibernate.search.mapper.pojo.bridge.PropertyBridge;
+import org.hibernate.search.mapper.pojo.bridge.binding.PropertyBindingContext;
+import org.hibernate.search.mapper.pojo.bridge.mapping.programmatic.PropertyBinder;
+import org.hibernate.search.mapper.pojo.bridge.runtime.PropertyBridgeWriteContext;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes the names and descriptions of a product in one field per locale (nameFr, descriptionFr, nameEn, ...), each
+ * analyzed with the stemming of its language. The locale is a value of the localized products, so a field per locale
+ * cannot be declared with annotations.
+ */
+public class LocalizedProductBinder implements PropertyBinder {
+    private static final Map<Locale, String> ANALYZERS = Map.of(
+            Locale.EN, SearchAnalysisConfigurer.PRODUCT_ENGLISH,
+            Locale.FR, SearchAnalysisConfigurer.PRODUCT_FRENCH
+    );
+
+    public static String descriptionField(Locale locale) {
+        return "description" + suffix(locale);
+    }
+
+    public static String nameField(Locale locale) {
+        return "name" + suffix(locale);
+    }
+
+    private static String suffix(Locale locale) {
+        return locale.name().charAt(0) + locale.name().substring(1).toLowerCase(java.util.Locale.ROOT);
+    }
+
+    @Override
+    public void bind(PropertyBindingContext context) {
+        context.dependencies()
+                .use("description")
+                .use("locale")
+                .use("name");
+
+        IndexFieldTypeFactory types = context.typeFactory();
+        Map<Locale, IndexFieldReference<String>> descriptionFields = new EnumMap<>(Locale.class);
+        Map<Locale, IndexFieldReference<String>> nameFields = new EnumMap<>(Locale.class);
+        for (Locale locale : Locale.values()) {
+            var type = types.asString().analyzer(ANALYZERS.get(locale)).toIndexFieldType();
+            // Nothing prevents a product from having two names in the same locale
+            descriptionFields.put(locale, context.indexSchemaElement().field(descriptionField(locale), type)
+                    .multiValued().toReference());
+            nameFields.put(
+                    locale, context.indexSchemaElement().field(nameField(locale), type).multiValued().toReference()
+            );
+        }
+        context.bridge(List.class, new Bridge(descriptionFields, nameFields));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static class Bridge implements PropertyBridge<List> {
+        private final Map<Locale, IndexFieldReference<String>> descriptionFields;
+        private final Map<Locale, IndexFieldReference<String>> nameFields;
+
+        Bridge(
+                Map<Locale, IndexFieldReference<String>> descriptionFields,
+                Map<Locale, IndexFieldReference<String>> nameFields
+        ) {
+            this.descriptionFields = descriptionFields;
+            this.nameFields = nameFields;
+        }
+
+        @Override
+        public void write(DocumentElement target, List bridgedElement, PropertyBridgeWriteContext context) {
+            for (Object element : bridgedElement) {
+                LocalizedProduct localizedProduct = (LocalizedProduct) element;
+                for (Locale locale : Locale.values()) {
+                    if (!locale.name().equals(localizedProduct.getLocale())) {
+                        continue;
+                    }
+                    target.addValue(nameFields.get(locale), localizedProduct.getName());
+                    if (localizedProduct.getDescription() != null) {
+                        target.addValue(descriptionFields.get(locale), localizedProduct.getDescription());
+                    }
+                }
+            }
+        }
+    }
+}
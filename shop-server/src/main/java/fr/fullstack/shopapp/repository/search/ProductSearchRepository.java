@@ -0,0 +1,141 @@
+package fr.fullstack.shopapp.repository.search;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import fr.fullstack.shopapp.dto.ProductFacets;
+import fr.fullstack.shopapp.model.Locale;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.util.Bulkhead;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.search.backend.elasticsearch.ElasticsearchExtension;
+import org.hibernate.search.engine.search.aggregation.AggregationKey;
+import org.hibernate.search.engine.search.predicate.dsl.BooleanPredicateOptionsCollector;
+import org.hibernate.search.engine.search.predicate.dsl.PredicateFinalStep;
+import org.hibernate.search.engine.search.predicate.dsl.SearchPredicateFactory;
+import org.hibernate.search.engine.search.query.SearchResult;
+import org.hibernate.search.mapper.orm.Search;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Queries on the products index, which is written by Hibernate Search only
+ */
+@Repository
+public class ProductSearchRepository {
+    // Number of categories counted by the facets, the most used ones
+    private static final int MAX_CATEGORY_FACETS = 500;
+    // A word of the name counts more than a word of the description
+    private static final float NAME_BOOST = 2;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private Bulkhead searchBulkhead;
+
+    /**
+     * The names and descriptions are scored, in the given locale or else in all the locales, each one with the
+     * analyzer of its language. The shop, the category and the price range are filters (not scored and cached by
+     * Elasticsearch). The hits are sorted by relevance and only hold the id of the products.
+     */
+    @Timed(value = "product.search", description = "Full-text search of the products in Elasticsearch", histogram = true)
+    public Page<Long> search(
+            String text,
+            Optional<Locale> locale,
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Optional<Integer> minPrice,
+            Optional<Integer> maxPrice,
+            Pageable pageable
+    ) {
+        // Bounded number of concurrent searches, see ConcurrencyConfig
+        SearchResult<Long> result = searchBulkhead.call(() -> Search.session(em).search(Product.class)
+                .select(f -> f.id(Long.class))
+                .where(f -> matchProducts(f, text, locale, shopId, categoryId, minPrice, maxPrice))
+                .sort(f -> f.score().then().field("id"))
+                .fetch((int) pageable.getOffset(), pageable.getPageSize())
+        );
+        return new PageImpl<>(result.hits(), pageable, result.total().hitCount());
+    }
+
+    /**
+     * Count the products matching the text per category and per price bucket, with aggregations of the same
+     * request: no hit is read. The categories are the ids only, their names are not in the index.
+     */
+    @Timed(value = "product.facets", description = "Facets of the products found in Elasticsearch", histogram = true)
+    public ProductFacets facets(String text, Optional<Locale> locale, Optional<Long> shopId, int priceInterval) {
+        AggregationKey<Map<Long, Long>> categoriesKey = AggregationKey.of("categories");
+        AggregationKey<JsonObject> pricesKey = AggregationKey.of("prices");
+        SearchResult<Long> result = searchBulkhead.call(() -> Search.session(em).search(Product.class)
+                .select(f -> f.id(Long.class))
+                .where(f -> matchProducts(
+                        f, text, locale, shopId, Optional.empty(), Optional.empty(), Optional.empty()
+                ))
+                // The most used categories first
+                .aggregation(categoriesKey, f -> f.terms().field("categories.id", Long.class)
+                        .maxTermCount(MAX_CATEGORY_FACETS))
+                .aggregation(pricesKey, f -> f.extension(ElasticsearchExtension.get())
+                        .fromJson(histogram("price", priceInterval)))
+                .fetch(0)
+        );
+
+        List<ProductFacets.CategoryCount> categories = result.aggregation(categoriesKey).entrySet().stream()
+                .map(entry -> new ProductFacets.CategoryCount(entry.getKey(), null, entry.getValue()))
+                .toList();
+        List<ProductFacets.PriceBucket> prices = new ArrayList<>();
+        for (JsonElement bucket : result.aggregation(pricesKey).getAsJsonArray("buckets")) {
+            int min = bucket.getAsJsonObject().get("key").getAsInt();
+            long count = bucket.getAsJsonObject().get("doc_count").getAsLong();
+            prices.add(new ProductFacets.PriceBucket(min, min + priceInterval, count));
+        }
+        return new ProductFacets(result.total().hitCount(), categories, prices);
+    }
+
+    // Buckets of interval wide prices, the empty ones are left out
+    private JsonObject histogram(String field, int interval) {
+        JsonObject options = new JsonObject();
+        options.addProperty("field", field);
+        options.addProperty("interval", interval);
+        options.addProperty("min_doc_count", 1);
+        JsonObject aggregation = new JsonObject();
+        aggregation.add("histogram", options);
+        return aggregation;
+    }
+
+    private PredicateFinalStep matchProducts(
+            SearchPredicateFactory f,
+            String text,
+            Optional<Locale> locale,
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Optional<Integer> minPrice,
+            Optional<Integer> maxPrice
+    ) {
+        List<Locale> locales = locale.map(List::of).orElseGet(() -> List.of(Locale.values()));
+        return f.bool().with(bool -> {
+            bool.must(f.bool().with(words -> locales.forEach(each -> matchText(f, words, each, text))));
+            shopId.ifPresent(id -> bool.filter(f.match().field("shop.id").matching(id)));
+            categoryId.ifPresent(id -> bool.filter(f.match().field("categories.id").matching(id)));
+            minPrice.ifPresent(price -> bool.filter(f.range().field("price").atLeast(price)));
+            maxPrice.ifPresent(price -> bool.filter(f.range().field("price").atMost(price)));
+        });
+    }
+
+    // Each field is matched on its own, so the text is analyzed like the field (stemming of its language)
+    private void matchText(
+            SearchPredicateFactory f, BooleanPredicateOptionsCollector<?> words, Locale locale, String text
+    ) {
+        words.should(f.match().field(LocalizedProductBinder.nameField(locale)).matching(text).boost(NAME_BOOST));
+        words.should(f.match().field(LocalizedProductBinder.descriptionField(locale)).matching(text));
+    }
+}
@@ -0,0 +1,103 @@
+package fr.fullstack.shopapp.repository.search;
+
+import com.google.gson.JsonObject;
+import fr.fullstack.shopapp.dto.ShopSuggestion;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.util.Bulkhead;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.search.backend.elasticsearch.ElasticsearchExtension;
+import org.hibernate.search.engine.search.query.SearchResult;
+import org.hibernate.search.mapper.orm.Search;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries on the shops index, which is written by Hibernate Search only
+ */
+@Repository
+public class ShopSearchRepository {
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private Bulkhead searchBulkhead;
+
+    /**
+     * Only the name is scored, the other criteria are filters (not scored and cached by Elasticsearch).
+     * The hits are sorted by relevance and only hold the id of the shops.
+     */
+    @Timed(value = "shop.search", description = "Full-text search of the shops in Elasticsearch", histogram = true)
+    public Page<Long> search(
+            String name,
+            Optional<Boolean> inVacations,
+            Optional<LocalDate> createdAfter,
+            Optional<LocalDate> createdBefore,
+            Pageable pageable
+    ) {
+        // Bounded number of concurrent searches, see ConcurrencyConfig
+        SearchResult<Long> result = searchBulkhead.call(() -> Search.session(em).search(Shop.class)
+                .select(f -> f.id(Long.class))
+                .where(f -> f.bool().with(bool -> {
+                    bool.must(f.extension(ElasticsearchExtension.get()).fromJson(matchBoolPrefix("name", name)));
+                    inVacations.ifPresent(value -> bool.filter(f.match().field("inVacations").matching(value)));
+                    createdAfter.ifPresent(date -> bool.filter(f.range().field("createdAt").greaterThan(date)));
+                    createdBefore.ifPresent(date -> bool.filter(f.range().field("createdAt").lessThan(date)));
+                }))
+                .sort(f -> f.score().then().field("id"))
+                .fetch((int) pageable.getOffset(), pageable.getPageSize())
+        );
+        return new PageImpl<>(result.hits(), pageable, result.total().hitCount());
+    }
+
+    /**
+     * Only the id and the name of the shops are read from the hits. Each word of the prefix must start a word of the
+     * name (see the name_prefix analyzer).
+     *
+     * @param timeout the search fails with a SearchTimeoutException after this delay
+     */
+    @Timed(value = "shop.suggest.search", description = "Suggestions of shop names from Elasticsearch", histogram = true)
+    public List<ShopSuggestion> suggest(String prefix, int size, Duration timeout) {
+        return searchBulkhead.call(() -> Search.session(em).search(Shop.class)
+                .select(f -> f.composite()
+                        .from(f.id(Long.class), f.field("name", String.class))
+                        .as(ShopSuggestion::new))
+                .where(f -> f.extension(ElasticsearchExtension.get()).fromJson(matchAllWords("namePrefix", prefix)))
+                .sort(f -> f.score().then().field("id"))
+                .failAfter(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .fetchHits(size)
+        );
+    }
+
+    private JsonObject matchAllWords(String field, String input) {
+        JsonObject options = new JsonObject();
+        options.addProperty("query", input);
+        options.addProperty("operator", "and");
+        JsonObject fieldQuery = new JsonObject();
+        fieldQuery.add(field, options);
+        JsonObject query = new JsonObject();
+        query.add("match", fieldQuery);
+        return query;
+    }
+
+    // The words of the input are matched, the last one can also be the beginning of a word
+    private JsonObject matchBoolPrefix(String field, String input) {
+        JsonObject options = new JsonObject();
+        options.addProperty("query", input);
+        JsonObject fieldQuery = new JsonObject();
+        fieldQuery.add(field, options);
+        JsonObject query = new JsonObject();
+        query.add("match_bool_prefix", fieldQuery);
+        return query;
+    }
+}
@@ -0,0 +1,60 @@
+package fr.fullstack.shopapp.service;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import fr.fullstack.shopapp.dto.CacheStatsDTO;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class CacheService {
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    public List<CacheStatsDTO> getCacheStats() {
+        List<CacheStatsDTO> caches = new ArrayList<>();
+        for (String name : cacheManager.getCacheNames()) {
+            com.github.benmanes.caffeine.cache.Cache<?, ?> cache =
+                    (com.github.benmanes.caffeine.cache.Cache<?, ?>) cacheManager.getCache(name).getNativeCache();
+            CacheStats stats = cache.stats();
+            CacheStatsDTO dto = new CacheStatsDTO();
+            dto.setEvictionCount(stats.evictionCount());
+            dto.setHitCount(stats.hitCount());
+            dto.setHitRate(stats.hitRate());
+            dto.setMissCount(stats.missCount());
+            dto.setName(name);
+            dto.setSize(cache.estimatedSize());
+            dto.setType("spring");
+            caches.add(dto);
+        }
+
+        // The second-level cache regions are only listed when hibernate.generate_statistics is enabled
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        if (statistics.isStatisticsEnabled()) {
+            for (String region : statistics.getSecondLevelCacheRegionNames()) {
+                CacheRegionStatistics stats = statistics.getDomainDataRegionStatistics(region);
+                long requests = stats.getHitCount() + stats.getMissCount();
+                CacheStatsDTO dto = new CacheStatsDTO();
+                dto.setHitCount(stats.getHitCount());
+                dto.setHitRate(requests == 0 ? 1 : (double) stats.getHitCount() / requests);
+                dto.setMissCount(stats.getMissCount());
+                dto.setName(region);
+                long size = stats.getElementCountInMemory();
+                dto.setSize(size == CacheRegionStatistics.NO_EXTENDED_STAT_SUPPORT_RETURN ? null : size);
+                dto.setType("hibernate");
+                caches.add(dto);
+            }
+        }
+        return caches;
+    }
+}
@@ -1,9 +1,16 @@
 package fr.fullstack.shopapp.service;
 
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.dto.CategoryView;
+import fr.fullstack.shopapp.exception.NotFoundException;
 import fr.fullstack.shopapp.model.Category;
-import fr.fullstack.shopapp.model.Product;
 import fr.fullstack.shopapp.repository.jpa.CategoryRepository;
+import fr.fullstack.shopapp.repository.jpa.ProductRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -19,66 +26,85 @@ public class CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ChangeCounterService changeCounterService;
+
     @PersistenceContext
     private EntityManager em;
 
-    public Category createCategory(Category category) throws Exception {
-        try {
-            return categoryRepository.save(category);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    @Autowired
+    private ProductIndexingService productIndexingService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    @Autowired
+    private ShopStatsService shopStatsService;
+
+    @Transactional
+    public Category createCategory(Category category) {
+        Category newCategory = categoryRepository.save(category);
+        changeCounterService.increment(ChangeCounterService.CATEGORIES);
+        return newCategory;
     }
 
+    // The products embed their categories
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.CATEGORIES, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true)
+    })
     @Transactional
-    public void deleteCategoryById(long id) throws Exception {
-        try {
-            Category category = getCategory(id);
-            // delete nested relations with products
-            deleteNestedRelations(category);
-            categoryRepository.deleteById(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    public void deleteCategoryById(long id) {
+        Category category = getCategory(id);
+        List<Long> shopIds = shopRepository.findShopIdsByCategory(id);
+        // delete nested relations with products
+        deleteNestedRelations(category);
+        categoryRepository.deleteById(id);
+        em.flush();
+        shopStatsService.onCategoryDeleted(shopIds);
+        changeCounterService.increment(ChangeCounterService.CATEGORIES);
     }
 
-    public Category getCategoryById(long id) throws Exception {
-        try {
-            return getCategory(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    @Cacheable(cacheNames = CacheConfig.CATEGORIES, key = "#id")
+    public CategoryView getCategoryById(long id) {
+        return categoryRepository.findViewById(id).orElseThrow(() -> new NotFoundException("Category", id));
     }
 
-    public Page<Category> getCategoryList(Pageable pageable) {
-        return categoryRepository.findByOrderByIdAsc(pageable);
+    /**
+     * @return the strong ETag of the category, empty if the category does not exist
+     */
+    public Optional<String> getCategoryETag(long id) {
+        return categoryRepository.findVersionById(id).map(version -> "\"" + version + "\"");
     }
 
-    public Category updateCategory(Category category) throws Exception {
-        try {
-            getCategory(category.getId());
-            return this.createCategory(category);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    public Page<CategoryView> getCategoryList(Pageable pageable) {
+        return categoryRepository.findViews(pageable);
+    }
+
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.CATEGORIES, key = "#category.id"),
+            // The facets hold the names of the categories
+            @CacheEvict(cacheNames = CacheConfig.FACETS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true)
+    })
+    @Transactional
+    public Category updateCategory(Category category) {
+        // The clients do not send the version, the update applies to the current one
+        category.setVersion(getCategory(category.getId()).getVersion());
+        return this.createCategory(category);
     }
 
     private void deleteNestedRelations(Category category) {
-        List<Product> products = category.getProducts();
-        for (Product product : products) {
-            List<Category> categories = product.getCategories();
-            categories.remove(category);
-            product.setCategories(categories);
-            em.merge(product);
-            em.flush();
-        }
+        List<Long> productIds = productRepository.findIdsByCategoryId(category.getId());
+        productRepository.removeCategory(category.getId());
+        // The bulk delete is not seen by Hibernate Search, the products are indexed again once it cleared the session
+        productIndexingService.reindex(productIds);
     }
 
-    private Category getCategory(Long id) throws Exception {
-        Optional<Category> category = categoryRepository.findById(id);
-        if (category.isEmpty()) {
-            throw new Exception("Category with id " + id + " not found");
-        }
-        return category.get();
+    private Category getCategory(Long id) {
+        return categoryRepository.findById(id).orElseThrow(() -> new NotFoundException("Category", id));
     }
 }
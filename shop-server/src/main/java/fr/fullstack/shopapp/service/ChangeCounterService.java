@@ -0,0 +1,88 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.ChangeCounter;
+import fr.fullstack.shopapp.repository.jpa.ChangeCounterRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Change counters of the shops, products and categories tables. A list is not modified as long as the counters of
+ * the tables it is read from did not move, so its weak ETag is checked with a single primary key lookup.
+ */
+@Service
+public class ChangeCounterService {
+    public static final String CATEGORIES = "categories";
+    public static final String PRODUCTS = "products";
+    public static final String SHOPS = "shops";
+
+    @Autowired
+    private ChangeCounterRepository changeCounterRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createMissingCounters() {
+        for (String name : List.of(CATEGORIES, PRODUCTS, SHOPS)) {
+            try {
+                changeCounterRepository.createCounter(name);
+            } catch (DataIntegrityViolationException e) {
+                // Created by another instance started at the same time
+            }
+        }
+    }
+
+    /**
+     * @return the weak ETag of a list read from the given tables, empty if a counter is missing
+     */
+    @Transactional(readOnly = true)
+    public Optional<String> getETag(String... names) {
+        Map<String, Long> counters = changeCounterRepository.findAllById(Arrays.asList(names)).stream()
+                .collect(Collectors.toMap(ChangeCounter::getName, ChangeCounter::getNbChanges));
+        if (counters.size() < names.length) {
+            return Optional.empty();
+        }
+        return Optional.of(Arrays.stream(names)
+                .map(name -> String.valueOf(counters.get(name)))
+                .collect(Collectors.joining(".", "W/\"", "\"")));
+    }
+
+    /**
+     * Increment the counters of the given tables when the current transaction commits. The counters are hot rows:
+     * they are updated with one statement per transaction, as late as possible to hold their locks briefly.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void increment(String... names) {
+        @SuppressWarnings("unchecked")
+        Set<String> pendingNames = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (pendingNames == null) {
+            Set<String> newPendingNames = new TreeSet<>();
+            TransactionSynchronizationManager.bindResource(this, newPendingNames);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    changeCounterRepository.increment(newPendingNames);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(ChangeCounterService.this);
+                }
+            });
+            pendingNames = newPendingNames;
+        }
+        pendingNames.addAll(Arrays.asList(names));
+    }
+}
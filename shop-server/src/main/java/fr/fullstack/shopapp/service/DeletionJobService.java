@@ -0,0 +1,98 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.exception.NotFoundException;
+import fr.fullstack.shopapp.model.DeletionJob;
+import fr.fullstack.shopapp.model.JobStatus;
+import fr.fullstack.shopapp.repository.jpa.DeletionJobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Runs the deletions of shops and categories in the background. The job status is stored in the database, so it can
+ * be polled from any instance of the application. Each job records the instance running it, which fails its own
+ * unfinished jobs when it restarts.
+ */
+@Service
+public class DeletionJobService {
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private DeletionJobRepository deletionJobRepository;
+
+    @Autowired
+    @Qualifier("deletionJobExecutor")
+    private TaskExecutor executor;
+
+    // Stable across the restarts of an instance and distinct between the instances sharing the database
+    @Value("${deletion.jobs.instance-id}")
+    private String instanceId;
+
+    @Autowired
+    private ShopService shopService;
+
+    public DeletionJob deleteCategoryById(long id) {
+        // Fail fast on an unknown category instead of creating a failed job
+        categoryService.getCategoryById(id);
+        return submit("category", id, () -> categoryService.deleteCategoryById(id));
+    }
+
+    public DeletionJob deleteShopById(long id) {
+        shopService.getShopById(id);
+        return submit("shop", id, () -> shopService.deleteShopById(id));
+    }
+
+    public DeletionJob getJobById(long id) {
+        return deletionJobRepository.findById(id).orElseThrow(() -> new NotFoundException("Job", id));
+    }
+
+    /**
+     * The jobs still running when this instance stopped will never finish
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void failInterruptedJobs() {
+        deletionJobRepository.failUnfinished(instanceId, "Interrupted by a restart of the application", Instant.now());
+    }
+
+    private void run(long jobId, Deletion deletion) {
+        // The job is read again, the instance returned to the client is not shared with the worker thread
+        DeletionJob job = deletionJobRepository.findById(jobId).orElseThrow();
+        job.setStatus(JobStatus.RUNNING);
+        deletionJobRepository.save(job);
+        try {
+            deletion.run();
+            job.setStatus(JobStatus.DONE);
+        } catch (Exception e) {
+            job.setError(e.getMessage());
+            job.setStatus(JobStatus.FAILED);
+        }
+        job.setFinishedAt(Instant.now());
+        deletionJobRepository.save(job);
+    }
+
+    private DeletionJob submit(String entityType, long entityId, Deletion deletion) {
+        DeletionJob job = new DeletionJob();
+        job.setCreatedAt(Instant.now());
+        job.setEntityId(entityId);
+        job.setEntityType(entityType);
+        job.setInstanceId(instanceId);
+        job.setStatus(JobStatus.PENDING);
+        DeletionJob newJob = deletionJobRepository.save(job);
+        executor.execute(() -> run(newJob.getId(), deletion));
+        return newJob;
+    }
+
+    @FunctionalInterface
+    private interface Deletion {
+        void run();
+    }
+}
@@ -0,0 +1,101 @@
+package fr.fullstack.shopapp.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Writes the whole catalogue as NDJSON (one read model per line, in id order). The entities are read from a
+ * server-side cursor by a stateless session, so nothing accumulates in a persistence context, and are written by
+ * chunks of fetch-size rows: the associations of a chunk are read with one query each (see ViewService), then the
+ * chunk is flushed to the client. A slow client blocks the write of the chunk, so at most one chunk is held in memory.
+ * Each export holds one connection of the pool until the last chunk is written, the number of concurrent exports is
+ * bounded by the export bulkhead taken by the controllers.
+ */
+@Service
+public class ExportService {
+    @PersistenceContext
+    private EntityManager em;
+
+    @Value("${shop.export.fetch-size:1000}")
+    private int fetchSize;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ViewService viewService;
+
+    // The cursor is only server-side within a transaction (Postgres reads the whole result without one)
+    @Transactional(readOnly = true)
+    public void exportProducts(OutputStream out) {
+        export(
+                "from Product p left join fetch p.shop order by p.id", Product.class,
+                viewService::toProductViews, out
+        );
+    }
+
+    @Transactional(readOnly = true)
+    public void exportShops(OutputStream out) {
+        export("from Shop s order by s.id", Shop.class, viewService::toShopViews, out);
+    }
+
+    private <T> void export(String query, Class<T> type, Function<List<T>, List<?>> toViews, OutputStream out) {
+        // The stateless session runs on the connection of the transaction, which also runs the queries of the views
+        em.unwrap(Session.class).doWork(connection -> {
+            try (
+                    StatelessSession session = em.unwrap(Session.class).getSessionFactory()
+                            .withStatelessOptions().connection(connection).openStatelessSession();
+                    ScrollableResults<T> rows = session.createSelectionQuery(query, type)
+                            .setFetchSize(fetchSize).setReadOnly(true).scroll(ScrollMode.FORWARD_ONLY);
+                    JsonGenerator generator = objectMapper.getFactory().createGenerator(out)
+                            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            ) {
+                // The lines are separated by a new line instead of the default space between root values
+                generator.setRootValueSeparator(null);
+                // The output is flushed once per chunk, not once per line
+                ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+                List<T> chunk = new ArrayList<>(fetchSize);
+                while (rows.next()) {
+                    chunk.add(rows.get());
+                    if (chunk.size() == fetchSize) {
+                        write(toViews.apply(chunk), writer, generator);
+                        chunk.clear();
+                    }
+                }
+                write(toViews.apply(chunk), writer, generator);
+            } catch (IOException e) {
+                // The client went away, the cursor and the transaction are closed
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void write(List<?> views, ObjectWriter writer, JsonGenerator generator) throws IOException {
+        for (Object view : views) {
+            writer.writeValue(generator, view);
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+    }
+}
@@ -0,0 +1,523 @@
+package fr.fullstack.shopapp.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import fr.fullstack.shopapp.dto.BatchItemResult;
+import fr.fullstack.shopapp.dto.ImportProgress;
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Imports shops and products sent as NDJSON (one shop or product per line, in the JSON of POST /shops and
+ * POST /products). The lines are parsed one at a time and handled by chunks: the rows of a chunk are validated with
+ * the rules of the entities, the valid ones are copied with COPY into temporary staging tables, then inserted into the
+ * real tables with one statement per table. Each chunk is committed on its own and reported to a listener, the
+ * invalid lines are rejected without stopping the import.
+ */
+@Service
+public class ImportService {
+    @Autowired
+    private ChangeCounterService changeCounterService;
+
+    // Number of lines validated and committed together
+    @Value("${shop.import.chunk-size:10000}")
+    private int chunkSize;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ShopStatsService shopStatsService;
+
+    @Autowired
+    private ShopSuggestService shopSuggestService;
+
+    private TransactionTemplate transaction;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    public void importProducts(InputStream in, Consumer<ImportProgress> listener) throws IOException {
+        importLines(in, Product.class, this::validateProducts, this::copyProducts, listener);
+    }
+
+    /**
+     * Import the products and write the progress of each chunk to the output as NDJSON
+     */
+    public void importProducts(InputStream in, OutputStream out) throws IOException {
+        try (JsonGenerator generator = createGenerator(out)) {
+            importProducts(in, progress -> write(progress, generator));
+        }
+    }
+
+    public void importShops(InputStream in, Consumer<ImportProgress> listener) throws IOException {
+        importLines(in, Shop.class, this::validateShops, this::copyShops, listener);
+    }
+
+    /**
+     * Import the shops and write the progress of each chunk to the output as NDJSON
+     */
+    public void importShops(InputStream in, OutputStream out) throws IOException {
+        try (JsonGenerator generator = createGenerator(out)) {
+            importShops(in, progress -> write(progress, generator));
+        }
+    }
+
+    private <T> void importLines(
+            InputStream in,
+            Class<T> type,
+            Function<List<T>, List<BatchItemResult>> validate,
+            Function<List<T>, List<Long>> copy,
+            Consumer<ImportProgress> listener
+    ) throws IOException {
+        Chunk<T> chunk = new Chunk<>(System.nanoTime());
+        ObjectReader reader = objectMapper.readerFor(type);
+        BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = lines.readLine()) != null) {
+            chunk.lines++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                T row = reader.readValue(line);
+                if (row == null) {
+                    chunk.reject((int) chunk.lines, "A line must be a JSON object");
+                } else {
+                    chunk.add(row, (int) chunk.lines);
+                }
+            } catch (JsonProcessingException e) {
+                chunk.reject((int) chunk.lines, "Malformed line: " + e.getOriginalMessage());
+            }
+            if (chunk.size() == chunkSize) {
+                listener.accept(importChunk(chunk, validate, copy, false));
+            }
+        }
+        listener.accept(importChunk(chunk, validate, copy, true));
+    }
+
+    private <T> ImportProgress importChunk(
+            Chunk<T> chunk,
+            Function<List<T>, List<BatchItemResult>> validate,
+            Function<List<T>, List<Long>> copy,
+            boolean finished
+    ) {
+        List<BatchItemResult> items = chunk.rows.isEmpty() ? List.of() : validate.apply(chunk.rows);
+        List<T> validRows = new ArrayList<>();
+        List<Integer> validLines = new ArrayList<>();
+        for (BatchItemResult item : items) {
+            int line = chunk.rowLines.get(item.getIndex());
+            if (item.isValid()) {
+                validRows.add(chunk.rows.get(item.getIndex()));
+                validLines.add(line);
+            } else {
+                item.setIndex(line);
+                chunk.rejected.add(item);
+            }
+        }
+
+        List<Long> ids = List.of();
+        if (!validRows.isEmpty()) {
+            try {
+                ids = transaction.execute(status -> copy.apply(validRows));
+            } catch (DataAccessException | PersistenceException e) {
+                // The chunk is rolled back (a shop or a category deleted since the validation), the next ones go on
+                for (int line : validLines) {
+                    BatchItemResult item = new BatchItemResult(line);
+                    item.setErrors(List.of("Chunk not imported: " + e.getMessage()));
+                    chunk.rejected.add(item);
+                }
+            }
+        }
+        chunk.rejected.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+
+        chunk.saved += ids.size();
+        chunk.failed += chunk.rejected.size();
+        long durationNanos = System.nanoTime() - chunk.start;
+        ImportProgress progress = new ImportProgress();
+        progress.setDurationMs(durationNanos / 1_000_000);
+        progress.setFailed(chunk.failed);
+        progress.setFinished(finished);
+        progress.setIds(ids);
+        progress.setLines(chunk.lines);
+        progress.setRejected(new ArrayList<>(chunk.rejected));
+        progress.setRowsPerSecond(durationNanos == 0 ? 0 : chunk.saved * 1e9 / durationNanos);
+        progress.setSaved(chunk.saved);
+        chunk.clear();
+        return progress;
+    }
+
+    private List<BatchItemResult> validateProducts(List<Product> products) {
+        // A missing list is an empty one, rejected by the constraints of the product when it may not be empty
+        for (Product product : products) {
+            if (product.getCategories() == null) {
+                product.setCategories(new ArrayList<>());
+            }
+            if (product.getLocalizedProducts() == null) {
+                product.setLocalizedProducts(new ArrayList<>());
+            }
+        }
+        return productService.validateProducts(products);
+    }
+
+    private List<BatchItemResult> validateShops(List<Shop> shops) {
+        List<BatchItemResult> items = new ArrayList<>();
+        for (int i = 0; i < shops.size(); i++) {
+            Shop shop = shops.get(i);
+            if (shop.getOpeningHours() == null) {
+                shop.setOpeningHours(new ArrayList<>());
+            }
+            BatchItemResult item = new BatchItemResult(i);
+            item.setErrors(validator.validate(shop).stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .toList());
+            items.add(item);
+        }
+        return items;
+    }
+
+    // MERGE
+    // Run in the transaction of the chunk, on its connection
+
+    private List<Long> copyProducts(List<Product> products) {
+        List<Long> ids = em.unwrap(Session.class).doReturningWork(connection -> {
+            try {
+                return copyProducts(connection, products);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        List<Long> shopIds = products.stream().map(ImportService::getShopId).toList();
+        shopStatsService.onProductsSaved(Collections.nCopies(shopIds.size(), null), shopIds);
+        changeCounterService.increment(ChangeCounterService.PRODUCTS);
+        return ids;
+    }
+
+    private List<Long> copyProducts(Connection connection, List<Product> products) throws SQLException, IOException {
+        // The ids are reserved from the sequences of the entities, so they never collide with the ids of Hibernate
+        long[] productIds = reserveIds(connection, "products_id_seq", products.size());
+        long[] localizedProductIds = reserveIds(
+                connection, "localized_product_id_seq",
+                products.stream().mapToInt(product -> product.getLocalizedProducts().size()).sum()
+        );
+
+        execute(
+                connection,
+                "CREATE TEMPORARY TABLE import_products (id int8, price int8, shop_id int8) ON COMMIT DROP",
+                "CREATE TEMPORARY TABLE import_localized_product (id int8, product_id int8, description text, "
+                        + "locale text, name text) ON COMMIT DROP",
+                "CREATE TEMPORARY TABLE import_products_categories (product_id int8, category_id int8) "
+                        + "ON COMMIT DROP"
+        );
+        copy(connection, "import_products (id, price, shop_id)", writer -> {
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.get(i);
+                writeRow(writer, productIds[i], product.getPrice(), getShopId(product));
+            }
+        });
+        copy(connection, "import_localized_product (id, product_id, description, locale, name)", writer -> {
+            int localizedProductIndex = 0;
+            for (int i = 0; i < products.size(); i++) {
+                for (LocalizedProduct localizedProduct : products.get(i).getLocalizedProducts()) {
+                    writeRow(
+                            writer, localizedProductIds[localizedProductIndex++], productIds[i],
+                            localizedProduct.getDescription(), localizedProduct.getLocale(), localizedProduct.getName()
+                    );
+                }
+            }
+        });
+        copy(connection, "import_products_categories (product_id, category_id)", writer -> {
+            for (int i = 0; i < products.size(); i++) {
+                for (Category category : products.get(i).getCategories()) {
+                    writeRow(writer, productIds[i], category.getId());
+                }
+            }
+        });
+
+        execute(
+                connection,
+                // Not seen by Hibernate Search, stamped to be indexed by ProductIndexingService, also when the import
+                // runs with the search disabled
+                "INSERT INTO products (id, external_updated_at, price, shop_id, version) "
+                        + "SELECT id, clock_timestamp(), price, shop_id, 0 FROM import_products",
+                "INSERT INTO localized_product (id, description, locale, name) "
+                        + "SELECT id, description, locale, name FROM import_localized_product",
+                "INSERT INTO products_localized_product (product_id, localized_product_id) "
+                        + "SELECT product_id, id FROM import_localized_product",
+                // A category listed twice in a product is linked once
+                "INSERT INTO products_categories (product_id, category_id) "
+                        + "SELECT DISTINCT product_id, category_id FROM import_products_categories"
+        );
+        return toList(productIds);
+    }
+
+    private List<Long> copyShops(List<Shop> shops) {
+        List<Long> ids = em.unwrap(Session.class).doReturningWork(connection -> {
+            try {
+                return copyShops(connection, shops);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        changeCounterService.increment(ChangeCounterService.SHOPS);
+        for (int i = 0; i < shops.size(); i++) {
+            shopSuggestService.onShopSaved(ids.get(i), shops.get(i).getName());
+        }
+        return ids;
+    }
+
+    private List<Long> copyShops(Connection connection, List<Shop> shops) throws SQLException, IOException {
+        long[] shopIds = reserveIds(connection, "shops_id_seq", shops.size());
+        long[] openingHoursIds = reserveIds(
+                connection, "opening_hours_shop_id_seq",
+                shops.stream().mapToInt(shop -> shop.getOpeningHours().size()).sum()
+        );
+
+        execute(
+                connection,
+                "CREATE TEMPORARY TABLE import_shops (id int8, in_vacations boolean, name text) ON COMMIT DROP",
+                "CREATE TEMPORARY TABLE import_opening_hours (id int8, shop_id int8, close_at time, "
+                        + "close_minute int4, day int4, open_at time, open_minute int4) ON COMMIT DROP"
+        );
+        copy(connection, "import_shops (id, in_vacations, name)", writer -> {
+            for (int i = 0; i < shops.size(); i++) {
+                Shop shop = shops.get(i);
+                writeRow(writer, shopIds[i], shop.getInVacations() ? "t" : "f", shop.getName());
+            }
+        });
+        copy(
+                connection,
+                "import_opening_hours (id, shop_id, close_at, close_minute, day, open_at, open_minute)",
+                writer -> {
+                    int openingHoursIndex = 0;
+                    for (int i = 0; i < shops.size(); i++) {
+                        for (OpeningHoursShop openingHours : shops.get(i).getOpeningHours()) {
+                            int day = (int) openingHours.getDay();
+                            writeRow(
+                                    writer, openingHoursIds[openingHoursIndex++], shopIds[i],
+                                    openingHours.getCloseAt(),
+                                    OpeningHoursShop.minuteOfWeek(day, openingHours.getCloseAt()), day,
+                                    openingHours.getOpenAt(),
+                                    OpeningHoursShop.minuteOfWeek(day, openingHours.getOpenAt())
+                            );
+                        }
+                    }
+                }
+        );
+
+        execute(
+                connection,
+                // Not seen by Hibernate Search, stamped to be indexed by ShopIndexingService
+                "INSERT INTO shops (id, created_at, external_updated_at, in_vacations, name, version) "
+                        + "SELECT id, CURRENT_DATE, clock_timestamp(), in_vacations, name, 0 FROM import_shops",
+                "INSERT INTO opening_hours (id, close_at, close_minute, day, open_at, open_minute) "
+                        + "SELECT id, close_at, close_minute, day, open_at, open_minute FROM import_opening_hours",
+                "INSERT INTO shops_opening_hours (shop_id, opening_hours_id) "
+                        + "SELECT shop_id, id FROM import_opening_hours",
+                "INSERT INTO shop_stats (shop_id, nb_products, nb_categories) SELECT id, 0, 0 FROM import_shops "
+                        + "ON CONFLICT (shop_id) DO NOTHING"
+        );
+        return toList(shopIds);
+    }
+
+    /**
+     * Reserve ids from a sequence the way Hibernate does: a sequence incremented by the allocation size of its
+     * generator reserves the ids from value - increment + 1 to value at each call
+     */
+    private static long[] reserveIds(Connection connection, String sequence, int count) throws SQLException {
+        long increment;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT increment_by FROM pg_sequences WHERE sequencename = ?"
+        )) {
+            statement.setString(1, sequence);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                increment = resultSet.getLong(1);
+            }
+        }
+
+        long[] ids = new long[count];
+        int nbIds = 0;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT nextval(CAST(? AS regclass)) FROM generate_series(1, ?)"
+        )) {
+            while (nbIds < count) {
+                statement.setString(1, sequence);
+                statement.setLong(2, (count - nbIds + increment - 1) / increment);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        long value = resultSet.getLong(1);
+                        // The first value of a sequence reserves the ids below 1, which are not used
+                        for (long id = Math.max(1, value - increment + 1); id <= value && nbIds < count; id++) {
+                            ids[nbIds++] = id;
+                        }
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static void copy(Connection connection, String table, RowsWriter rows) throws SQLException, IOException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new PGCopyOutputStream(pgConnection, "COPY " + table + " FROM STDIN"),
+                StandardCharsets.UTF_8
+        ), 1 << 16)) {
+            rows.write(writer);
+        }
+    }
+
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    private static void execute(Connection connection, String... sqls) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : sqls) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static Long getShopId(Product product) {
+        return product.getShop() == null ? null : product.getShop().getId();
+    }
+
+    private static List<Long> toList(long[] ids) {
+        return Arrays.stream(ids).boxed().toList();
+    }
+
+    private void write(ImportProgress progress, JsonGenerator generator) {
+        try {
+            objectMapper.writeValue(generator, progress);
+            generator.writeRaw('\n');
+            generator.flush();
+        } catch (IOException e) {
+            // The client went away, the chunks already committed are kept
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Text format of COPY: columns separated by tabs, \N for null, backslashes and control characters escaped
+     */
+    private static void writeRow(Writer writer, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write('\t');
+            }
+            if (values[i] == null) {
+                writer.write("\\N");
+            } else {
+                writer.write(values[i].toString()
+                        .replace("\\", "\\\\")
+                        .replace("\t", "\\t")
+                        .replace("\n", "\\n")
+                        .replace("\r", "\\r"));
+            }
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Lines of the chunk being read, with the totals of the import
+     */
+    private static class Chunk<T> {
+        int failed;
+        long lines;
+        final List<BatchItemResult> rejected = new ArrayList<>();
+        final List<Integer> rowLines = new ArrayList<>();
+        final List<T> rows = new ArrayList<>();
+        int saved;
+        final long start;
+
+        Chunk(long start) {
+            this.start = start;
+        }
+
+        void add(T row, int line) {
+            rows.add(row);
+            rowLines.add(line);
+        }
+
+        void clear() {
+            rejected.clear();
+            rowLines.clear();
+            rows.clear();
+        }
+
+        void reject(int line, String error) {
+            BatchItemResult item = new BatchItemResult(line);
+            item.setErrors(List.of(error));
+            rejected.add(item);
+        }
+
+        int size() {
+            return rows.size() + rejected.size();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowsWriter {
+        void write(Writer writer) throws IOException;
+    }
+}
@@ -0,0 +1,114 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.dto.ShopView;
+import fr.fullstack.shopapp.exception.InvalidInputException;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.util.CursorPagination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Lists the shops open at a given time from the minutes of the week of their opening hours (open_minute and
+ * close_minute) and a range index, instead of checking the opening hours of every shop. The application computes the
+ * minutes on each write of the opening hours, the rows inserted outside the application are filled at startup.
+ */
+@Service
+public class OpeningHoursService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OpeningHoursService.class);
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    // Time zone of the opening hours, used when the day or the time is not given
+    @Value("${shop.opening-hours.time-zone:Europe/Paris}")
+    private ZoneId timeZone;
+
+    @Autowired
+    private ViewService viewService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createMinutesIndex() {
+        try {
+            shopRepository.createMinutesIndex();
+        } catch (DataAccessException e) {
+            // The range types are specific to PostgreSQL: without the index the open shops are found by scanning the
+            // opening hours, and the query of the open shops fails on the other databases
+            LOGGER.warn("The range index of the opening hours is not installed", e);
+        }
+    }
+
+    /**
+     * Backfill the minutes of the opening hours inserted outside the application (sql scripts, previous versions)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void fillMissingMinutes() {
+        shopRepository.fillMissingMinutes();
+    }
+
+    /**
+     * @param day   day of the week (1 is monday), today if empty
+     * @param time  time of the day, now if empty
+     * @param after cursor returned as nextCursor by the previous call, empty for the first page
+     * @return the shops open at the given time and not in vacations, in id order
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ShopView> getOpenShopList(
+            Optional<Integer> day,
+            Optional<LocalTime> time,
+            Optional<String> after,
+            int size
+    ) {
+        if (day.isPresent() && (day.get() < 1 || day.get() > 7)) {
+            throw new InvalidInputException("Day should be between 1 and 7");
+        }
+
+        ZonedDateTime now = ZonedDateTime.now(timeZone);
+        int minuteOfWeek = OpeningHoursShop.minuteOfWeek(
+                day.orElse(now.getDayOfWeek().getValue()), time.orElse(now.toLocalTime())
+        );
+        Object afterId = ((KeysetScrollPosition) CursorPagination.decode(after, Shop.class, Sort.by("id")))
+                .getKeys().get("id");
+
+        // One more id is read to know if there is a next page
+        List<Long> ids = shopRepository.findOpenIds(minuteOfWeek, afterId == null ? 0 : (Long) afterId, size + 1);
+        List<Long> pageIds = ids.subList(0, Math.min(size, ids.size()));
+        Map<Long, Shop> shops = shopRepository.findAllById(pageIds).stream()
+                .collect(Collectors.toMap(Shop::getId, Function.identity()));
+
+        CursorPage<ShopView> page = new CursorPage<>();
+        page.setContent(viewService.toShopViews(
+                pageIds.stream().map(shops::get).filter(Objects::nonNull).toList()
+        ));
+        page.setSize(pageIds.size());
+        if (ids.size() > size) {
+            page.setNextCursor(CursorPagination.encode(
+                    ScrollPosition.forward(Map.of("id", pageIds.get(pageIds.size() - 1)))
+            ));
+        }
+        return page;
+    }
+}
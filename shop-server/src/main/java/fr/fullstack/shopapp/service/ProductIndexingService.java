@@ -0,0 +1,171 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.SearchIndexState;
+import fr.fullstack.shopapp.repository.jpa.ProductRepository;
+import fr.fullstack.shopapp.repository.jpa.SearchIndexStateRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import fr.fullstack.shopapp.util.SqlLiterals;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.session.SearchSession;
+import org.hibernate.search.mapper.orm.work.SearchIndexingPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The products index is written by Hibernate Search: the products persisted, merged or removed through the
+ * application are written in the outbox table by the same transaction. This service adds the products written by
+ * the bulk statements of the application (removal of a shop or a category), which Hibernate Search does not see, and
+ * indexes the products written outside of Hibernate (imports, sql scripts), which triggers stamp with
+ * external_updated_at.
+ */
+@Service
+public class ProductIndexingService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductIndexingService.class);
+    private static final String INDEX_NAME = "products";
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private SearchIndexStateRepository searchIndexStateRepository;
+
+    // Name of the connections of the application, whose writes are not stamped by the triggers
+    @Value("${spring.datasource.hikari.data-source-properties.ApplicationName:shop-server}")
+    private String applicationName;
+
+    @Value("${shop.search.sync.batch-size:500}")
+    private int batchSize;
+
+    // Hibernate Search is disabled by the import profile and the benchmarks, the products stamped meanwhile are
+    // indexed once it is enabled again
+    @Value("${spring.jpa.properties.hibernate.search.enabled:true}")
+    private boolean searchEnabled;
+
+    private TransactionTemplate transaction;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Install the triggers on the databases created by Hibernate (ddl-auto) rather than by create_tables.sql, and again
+     * with the configured application name on the others
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createExternalUpdateTriggers() {
+        try {
+            productRepository.createExternalUpdateFunction();
+            productRepository.createJoinExternalUpdateFunction();
+            productRepository.createLocalizedProductExternalUpdateFunction();
+            // The arguments of a trigger are literals, they cannot be bound
+            String applicationNameArgument = "(" + SqlLiterals.quote(applicationName) + ")";
+            transaction.executeWithoutResult(status -> {
+                em.createNativeQuery(
+                        "CREATE OR REPLACE TRIGGER products_external_updated_at BEFORE INSERT OR UPDATE ON products "
+                                + "FOR EACH ROW EXECUTE FUNCTION products_set_external_updated_at"
+                                + applicationNameArgument
+                ).executeUpdate();
+                em.createNativeQuery(
+                        "CREATE OR REPLACE TRIGGER products_categories_external_updated_at "
+                                + "AFTER INSERT OR UPDATE OR DELETE ON products_categories "
+                                + "FOR EACH ROW EXECUTE FUNCTION products_set_external_updated_at_from_join"
+                                + applicationNameArgument
+                ).executeUpdate();
+                em.createNativeQuery(
+                        "CREATE OR REPLACE TRIGGER products_localized_product_external_updated_at "
+                                + "AFTER INSERT OR UPDATE OR DELETE ON products_localized_product "
+                                + "FOR EACH ROW EXECUTE FUNCTION products_set_external_updated_at_from_join"
+                                + applicationNameArgument
+                ).executeUpdate();
+                em.createNativeQuery(
+                        "CREATE OR REPLACE TRIGGER localized_product_external_updated_at "
+                                + "AFTER UPDATE ON localized_product "
+                                + "FOR EACH ROW EXECUTE FUNCTION localized_product_set_external_updated_at"
+                                + applicationNameArgument
+                ).executeUpdate();
+            });
+        } catch (DataAccessException | PersistenceException e) {
+            // The triggers are written in PL/pgSQL, the writes made outside the application are not indexed on the
+            // other databases
+            LOGGER.warn("The triggers of the products written outside the application are not installed", e);
+        }
+    }
+
+    /**
+     * Index all the products in background on the first start or when the index is empty
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void indexIfEmpty() {
+        if (!searchEnabled) {
+            return;
+        }
+
+        SearchSession session = Search.session(em);
+        Optional<SearchIndexState> state = searchIndexStateRepository.findById(INDEX_NAME);
+        if (state.isEmpty() || session.search(Product.class).where(f -> f.matchAll()).fetchTotalHitCount() == 0) {
+            SearchIndexState massIndexed = state.orElseGet(SearchIndexState::new);
+            massIndexed.setName(INDEX_NAME);
+            massIndexed.setMassIndexedAt(Instant.now());
+            searchIndexStateRepository.save(massIndexed);
+            session.massIndexer(Product.class).start();
+        }
+    }
+
+    /**
+     * Index the products stamped by the triggers or the imports, by batches committed one at a time, and clear their
+     * stamp in the same transaction (see ShopIndexingService)
+     */
+    @Scheduled(fixedDelayString = "${shop.search.sync.interval:10000}")
+    public void indexExternalUpdates() {
+        if (!searchEnabled) {
+            return;
+        }
+
+        int indexed;
+        do {
+            indexed = transaction.execute(status -> {
+                List<Long> productIds = productRepository.findExternallyUpdatedIds(batchSize);
+                reindex(productIds);
+                if (!productIds.isEmpty()) {
+                    productRepository.clearExternalUpdates(productIds);
+                }
+                return productIds.size();
+            });
+        } while (indexed == batchSize);
+    }
+
+    /**
+     * Add the products to the indexing plan of the current transaction, they are indexed once it is committed.
+     * The products are not loaded, only their ids are written in the outbox table.
+     */
+    public void reindex(Collection<Long> productIds) {
+        if (!searchEnabled || productIds.isEmpty()) {
+            return;
+        }
+        SearchIndexingPlan indexingPlan = Search.session(em).indexingPlan();
+        productIds.forEach(id -> indexingPlan.addOrUpdate(em.getReference(Product.class, id)));
+    }
+}
@@ -1,100 +1,620 @@
 package fr.fullstack.shopapp.service;
 
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.dto.BatchItemResult;
+import fr.fullstack.shopapp.dto.BatchResult;
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.dto.ProductFacets;
+import fr.fullstack.shopapp.dto.ProductLocaleView;
+import fr.fullstack.shopapp.dto.ProductView;
+import fr.fullstack.shopapp.dto.ShopView;
+import fr.fullstack.shopapp.exception.InvalidInputException;
+import fr.fullstack.shopapp.exception.NotFoundException;
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Locale;
 import fr.fullstack.shopapp.model.LocalizedProduct;
 import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.repository.jpa.CategoryRepository;
 import fr.fullstack.shopapp.repository.jpa.ProductRepository;
+import fr.fullstack.shopapp.repository.jpa.ProductSpecifications;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.repository.search.ProductSearchRepository;
+import fr.fullstack.shopapp.util.CursorPagination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class ProductService {
+    // A name in french is always provided, the other locales are optional
+    public static final Locale DEFAULT_LOCALE = Locale.FR;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductService.class);
+
+    private static final List<String> SUPPORTED_LANGUAGE_TAGS = Arrays.stream(Locale.values())
+            .map(locale -> locale.name().toLowerCase(java.util.Locale.ROOT))
+            .toList();
+
     @PersistenceContext
     private EntityManager em;
 
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ChangeCounterService changeCounterService;
+
+    @Value("${product.batch.max-size:10000}")
+    private int maxBatchSize;
+
+    // Width of the price buckets of the facets, in cents
+    @Value("${product.facets.price-interval:1000}")
+    private int priceInterval;
+
+    @Autowired
+    private ProductIndexingService productIndexingService;
+
     @Autowired
     private ProductRepository productRepository;
 
-    @Transactional
-    public Product createProduct(Product product) throws Exception {
-        // Check that product exists at least in french and check name's length
+    @Autowired
+    private ProductSearchRepository productSearchRepository;
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    @Autowired
+    private ShopService shopService;
+
+    @Autowired
+    private ShopStatsService shopStatsService;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ViewService viewService;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Move the id sequences of the products and localized products after the existing ids, on the databases where
+     * ddl-auto created them after the products were inserted (ids of hibernate_sequence, sql scripts)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void alignIdSequences() {
         try {
-            checkLocalizedProducts(product);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+            productRepository.alignIdSequence();
+            productRepository.alignLocalizedProductIdSequence();
+        } catch (DataAccessException e) {
+            // setval is specific to PostgreSQL, the sequences of the other databases are left as they are
+            LOGGER.warn("The id sequences of the products are not moved after the existing ids", e);
         }
+    }
 
-        try {
-            Product newProduct = productRepository.save(product);
+    @Transactional
+    public Product createProduct(Product product) {
+        Product newProduct = saveProduct(product);
+        shopStatsService.onProductSaved(null, newProduct);
+        refreshShop(newProduct);
+        changeCounterService.increment(ChangeCounterService.PRODUCTS);
+        return newProduct;
+    }
+
+    /**
+     * Create the valid products of the list, the invalid ones are reported in the result without aborting the batch.
+     * Products are inserted in chunks of the JDBC batch size and the persistence context is cleared between chunks.
+     */
+    @Transactional
+    public BatchResult createProducts(List<Product> products) {
+        checkBatchSize(products);
+        List<BatchItemResult> items = validateProducts(products);
+        List<Long> shopIds = new ArrayList<>();
+
+        for (List<Integer> chunk : getValidChunks(items)) {
+            for (int index : chunk) {
+                Product product = products.get(index);
+                // Ids are always generated from the sequences
+                product.setId(0);
+                product.getLocalizedProducts().forEach(localizedProduct -> localizedProduct.setId(0));
+                em.persist(product);
+                items.get(index).setId(product.getId());
+                shopIds.add(getShopId(product));
+            }
             em.flush();
-            em.refresh(newProduct);
-            return newProduct;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+            em.clear();
         }
+
+        shopStatsService.onProductsSaved(Collections.nCopies(shopIds.size(), null), shopIds);
+        changeCounterService.increment(ChangeCounterService.PRODUCTS);
+        return toBatchResult(items);
     }
 
-    public void deleteProductById(long id) throws Exception {
-        try {
-            getProduct(id);
-            productRepository.deleteById(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#id")
+    @Transactional
+    public void deleteProductById(long id) {
+        Long shopId = getShopId(getProduct(id));
+        productRepository.deleteById(id);
+        em.flush();
+        shopStatsService.onProductDeleted(shopId);
+        changeCounterService.increment(ChangeCounterService.PRODUCTS);
+    }
+
+    /**
+     * The search runs outside of a transaction, so no connection is held while Elasticsearch answers. The products
+     * of the hits are then loaded with a fixed number of queries, in the order of the hits.
+     *
+     * @param locale locale of the names and descriptions to search, all the locales if empty
+     * @throws InvalidInputException if the minimum price is greater than the maximum price
+     */
+    public Page<ProductView> fullTextProductSearch(
+            String text,
+            Optional<Locale> locale,
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Optional<Integer> minPrice,
+            Optional<Integer> maxPrice,
+            Pageable pageable
+    ) {
+        if (minPrice.isPresent() && maxPrice.isPresent() && minPrice.get() > maxPrice.get()) {
+            throw new InvalidInputException("minPrice must be lower than or equal to maxPrice");
         }
+
+        Page<Long> ids = productSearchRepository.search(
+                text, locale, shopId, categoryId, minPrice, maxPrice, pageable
+        );
+        List<ProductView> products = ids.isEmpty() ? List.of() : readOnlyTransaction.execute(status -> {
+            Map<Long, ProductView> views = viewService.toProductViews(productRepository.findAllById(ids.getContent()))
+                    .stream().collect(Collectors.toMap(ProductView::id, Function.identity()));
+            // A hit deleted since its indexing is skipped
+            return ids.getContent().stream().map(views::get).filter(Objects::nonNull).toList();
+        });
+        return new PageImpl<>(products, pageable, ids.getTotalElements());
     }
 
-    public Product getProductById(long id) throws Exception {
-        try {
-            return getProduct(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    /**
+     * Facets of the products matching a full-text search, counted by Elasticsearch. They depend on the text, so they
+     * are not cached.
+     */
+    public ProductFacets fullTextProductFacets(String text, Optional<Locale> locale, Optional<Long> shopId) {
+        ProductFacets facets = productSearchRepository.facets(text, locale, shopId, priceInterval);
+        Map<Long, String> names = categoryRepository.findAllById(
+                facets.categories().stream().map(ProductFacets.CategoryCount::id).toList()
+        ).stream().collect(Collectors.toMap(Category::getId, Category::getName));
+        // A category deleted since the indexing of its products is skipped
+        List<ProductFacets.CategoryCount> categories = facets.categories().stream()
+                .filter(category -> names.containsKey(category.id()))
+                .map(category -> new ProductFacets.CategoryCount(
+                        category.id(), names.get(category.id()), category.count()
+                ))
+                .toList();
+        return new ProductFacets(facets.total(), categories, facets.prices());
+    }
+
+    /**
+     * The product is cached without its shop, whose stats change with the writes of the other products of the shop:
+     * the shop is read from the cache of the shops, evicted with its stats (see ShopStatsService).
+     */
+    public ProductView getProductById(long id) {
+        Cache products = cacheManager.getCache(CacheConfig.PRODUCTS);
+        CachedProduct cached = products.get(id, CachedProduct.class);
+        if (cached == null) {
+            ProductView product = readOnlyTransaction.execute(
+                    status -> viewService.toProductViews(List.of(getProduct(id))).get(0)
+            );
+            Long shopId = product.shop() == null ? null : product.shop().id();
+            products.put(id, new CachedProduct(withShop(product, null), shopId));
+            return product;
         }
+        return cached.shopId() == null
+                ? cached.product()
+                : withShop(cached.product(), shopService.getShopById(cached.shopId()));
     }
 
-    public Page<Product> getShopProductList(Optional<Long> shopId, Optional<Long> categoryId, Pageable pageable) {
-        if (shopId.isPresent() && categoryId.isPresent()) {
-            return productRepository.findByShopAndCategory(shopId.get(), categoryId.get(), pageable);
+    @Transactional(readOnly = true)
+    public ProductLocaleView getProductById(long id, Locale locale) {
+        return viewService.toProductLocaleViews(List.of(getProduct(id)), locale).get(0);
+    }
+
+    /**
+     * @return the strong ETag of the product, empty if the product does not exist
+     */
+    public Optional<String> getProductETag(long id) {
+        return productRepository.findETagById(id).map(version -> "\"" + version + "\"");
+    }
+
+    /**
+     * Facets of the products of a shop, counted by one grouped query. They are cached until a write changes the
+     * products or the categories of the shop (see ShopStatsService).
+     */
+    @Cacheable(cacheNames = CacheConfig.FACETS, key = "#shopId")
+    @Transactional(readOnly = true)
+    public ProductFacets getShopProductFacets(long shopId) {
+        long total = 0;
+        List<ProductFacets.CategoryCount> categories = new ArrayList<>();
+        List<ProductFacets.PriceBucket> prices = new ArrayList<>();
+        for (ProductRepository.FacetRow row : productRepository.findFacetsByShopId(shopId, priceInterval)) {
+            if (row.getAllCategories() == 1 && row.getAllPrices() == 1) {
+                total = row.getCount();
+            } else if (row.getAllPrices() == 1) {
+                // The products without category are only counted in the total
+                if (row.getCategoryId() != null) {
+                    categories.add(new ProductFacets.CategoryCount(
+                            row.getCategoryId(), row.getCategoryName(), row.getCount()
+                    ));
+                }
+            } else {
+                int min = row.getBucket() * priceInterval;
+                prices.add(new ProductFacets.PriceBucket(min, min + priceInterval, row.getCount()));
+            }
         }
+        categories.sort(Comparator.comparingLong(ProductFacets.CategoryCount::count).reversed()
+                .thenComparingLong(ProductFacets.CategoryCount::id));
+        prices.sort(Comparator.comparingInt(ProductFacets.PriceBucket::min));
+        return new ProductFacets(total, List.copyOf(categories), List.copyOf(prices));
+    }
 
-        if (shopId.isPresent()) {
-            return productRepository.findByShop(shopId.get(), pageable);
+    @Transactional(readOnly = true)
+    public Page<ProductView> getShopProductList(Optional<Long> shopId, Optional<Long> categoryId, Pageable pageable) {
+        Page<Product> products = findProducts(shopId, categoryId, pageable);
+        return new PageImpl<>(
+                viewService.toProductViews(products.getContent()), products.getPageable(), products.getTotalElements()
+        );
+    }
+
+    @Transactional(readOnly = true)
+    public Page<ProductLocaleView> getShopProductList(
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Locale locale,
+            Pageable pageable
+    ) {
+        Page<Product> products = findProducts(shopId, categoryId, pageable);
+        return new PageImpl<>(
+                viewService.toProductLocaleViews(products.getContent(), locale),
+                products.getPageable(),
+                products.getTotalElements()
+        );
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPage<ProductView> getShopProductListAfter(
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Optional<String> after,
+            int size,
+            boolean withCount
+    ) {
+        return findProductsAfter(shopId, categoryId, after, size, withCount, viewService::toProductViews);
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPage<ProductLocaleView> getShopProductListAfter(
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Locale locale,
+            Optional<String> after,
+            int size,
+            boolean withCount
+    ) {
+        return findProductsAfter(
+                shopId, categoryId, after, size, withCount,
+                products -> viewService.toProductLocaleViews(products, locale)
+        );
+    }
+
+    /**
+     * @param locale         locale given in the query, blank to use the Accept-Language header
+     * @param acceptLanguage Accept-Language header of the request, null if absent
+     * @return the locale of the query, else the first supported locale of the header, french by default
+     * @throws InvalidInputException if the locale of the query is not supported
+     */
+    public Locale resolveLocale(String locale, String acceptLanguage) {
+        if (locale != null && !locale.isBlank()) {
+            try {
+                return Locale.valueOf(locale.trim().toUpperCase(java.util.Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidInputException("Locale must be FR or EN");
+            }
         }
 
-        return productRepository.findByOrderByIdAsc(pageable);
+        if (acceptLanguage != null && !acceptLanguage.isBlank()) {
+            try {
+                String tag = java.util.Locale.lookupTag(
+                        java.util.Locale.LanguageRange.parse(acceptLanguage), SUPPORTED_LANGUAGE_TAGS
+                );
+                if (tag != null) {
+                    return Locale.valueOf(tag.toUpperCase(java.util.Locale.ROOT));
+                }
+            } catch (IllegalArgumentException e) {
+                // A malformed header is ignored
+            }
+        }
+        return DEFAULT_LOCALE;
     }
 
+    /**
+     * Update the valid products of the list, the invalid or unknown ones are reported in the result without aborting
+     * the batch. The products of a chunk are loaded with one query before being merged.
+     */
     @Transactional
-    public Product updateProduct(Product product) throws Exception {
-        try {
-            getProduct(product.getId());
-            return this.createProduct(product);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    public BatchResult updateProducts(List<Product> products) {
+        checkBatchSize(products);
+        List<BatchItemResult> items = validateProducts(products);
+        Set<Long> productIds = new HashSet<>();
+        for (BatchItemResult item : items) {
+            long productId = products.get(item.getIndex()).getId();
+            if (item.isValid() && !productIds.add(productId)) {
+                item.setErrors(List.of("Product with id " + productId + " is already updated by the batch"));
+            }
+        }
+
+        List<Long> previousShopIds = new ArrayList<>();
+        List<Long> shopIds = new ArrayList<>();
+
+        for (List<Integer> chunk : getValidChunks(items)) {
+            Map<Long, Product> existingProducts = productRepository.findAllById(
+                    chunk.stream().map(index -> products.get(index).getId()).toList()
+            ).stream().collect(Collectors.toMap(Product::getId, Function.identity()));
+
+            List<Long> mergedIds = new ArrayList<>();
+            Map<Long, Long> previousVersions = new HashMap<>();
+            for (int index : chunk) {
+                Product product = products.get(index);
+                items.get(index).setId(product.getId());
+                Product existingProduct = existingProducts.get(product.getId());
+                if (existingProduct == null) {
+                    items.get(index).setErrors(List.of("Product with id " + product.getId() + " not found"));
+                    continue;
+                }
+                previousShopIds.add(getShopId(existingProduct));
+                previousVersions.put(product.getId(), existingProduct.getVersion());
+                // The clients do not send the version, the update applies to the current one
+                product.setVersion(existingProduct.getVersion());
+                shopIds.add(getShopId(em.merge(product)));
+                mergedIds.add(product.getId());
+                cacheManager.getCache(CacheConfig.PRODUCTS).evict(product.getId());
+            }
+            // Processed by the flush, before the clear discards the indexing plan
+            productIndexingService.reindex(mergedIds);
+            em.flush();
+            // The flush increments the version of the products whose row changed, the others only changed their
+            // localized products or nothing and are incremented here, so that each product is incremented once
+            List<Long> unchangedIds = mergedIds.stream()
+                    .filter(id -> existingProducts.get(id).getVersion() == previousVersions.get(id))
+                    .toList();
+            if (!unchangedIds.isEmpty()) {
+                productRepository.incrementVersions(unchangedIds);
+            }
+            em.clear();
+        }
+
+        shopStatsService.onProductsSaved(previousShopIds, shopIds);
+        changeCounterService.increment(ChangeCounterService.PRODUCTS);
+        return toBatchResult(items);
+    }
+
+    @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#product.id")
+    @Transactional
+    public Product updateProduct(Product product) {
+        Product existingProduct = getProduct(product.getId());
+        Long previousShopId = getShopId(existingProduct);
+        // The clients do not send the version, the update applies to the current one
+        long previousVersion = existingProduct.getVersion();
+        product.setVersion(previousVersion);
+        Product updatedProduct = saveProduct(product);
+        // The flush increments the version when the product row changed. The localized products are part of the
+        // product but do not make its row dirty, the version is then incremented here, so that it is incremented once
+        if (updatedProduct.getVersion() == previousVersion) {
+            em.lock(updatedProduct, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
         }
+        // Hibernate Search does not see the changes of the localized products (see Product)
+        productIndexingService.reindex(List.of(updatedProduct.getId()));
+        shopStatsService.onProductSaved(previousShopId, updatedProduct);
+        refreshShop(updatedProduct);
+        changeCounterService.increment(ChangeCounterService.PRODUCTS);
+        return updatedProduct;
     }
 
-    private void checkLocalizedProducts(Product product) throws Exception {
+    /**
+     * Validate each product of a batch (constraints, french name, existence of the shop and of the categories).
+     * Shops and categories are checked with one query each for the whole batch.
+     *
+     * @return the result of each product, in the order of the list
+     */
+    public List<BatchItemResult> validateProducts(List<Product> products) {
+        Set<Long> shopIds = new HashSet<>();
+        Set<Long> categoryIds = new HashSet<>();
+        for (Product product : products) {
+            if (product.getShop() != null) {
+                shopIds.add(product.getShop().getId());
+            }
+            if (product.getCategories() != null) {
+                product.getCategories().forEach(category -> categoryIds.add(category.getId()));
+            }
+        }
+        Set<Long> existingShopIds = new HashSet<>(
+                shopIds.isEmpty() ? List.of() : shopRepository.findExistingIds(shopIds)
+        );
+        Set<Long> existingCategoryIds = new HashSet<>(
+                categoryIds.isEmpty() ? List.of() : categoryRepository.findExistingIds(categoryIds)
+        );
+
+        List<BatchItemResult> items = new ArrayList<>();
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            List<String> errors = validator.validate(product).stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+            if (errors.isEmpty()) {
+                try {
+                    checkLocalizedProducts(product);
+                } catch (InvalidInputException e) {
+                    errors.add(e.getMessage());
+                }
+            }
+            if (product.getShop() != null && !existingShopIds.contains(product.getShop().getId())) {
+                errors.add("Shop with id " + product.getShop().getId() + " not found");
+            }
+            if (product.getCategories() != null) {
+                product.getCategories().stream()
+                        .map(Category::getId)
+                        .filter(categoryId -> !existingCategoryIds.contains(categoryId))
+                        .distinct()
+                        .forEach(categoryId -> errors.add("Category with id " + categoryId + " not found"));
+            }
+
+            BatchItemResult item = new BatchItemResult(i);
+            item.setErrors(errors);
+            items.add(item);
+        }
+        return items;
+    }
+
+    private void checkBatchSize(List<Product> products) {
+        if (products.size() > maxBatchSize) {
+            throw new InvalidInputException("A batch cannot contain more than " + maxBatchSize + " products");
+        }
+    }
+
+    private void checkLocalizedProducts(Product product) {
         Optional<LocalizedProduct> localizedProductFr = product.getLocalizedProducts()
-                .stream().filter(o -> o.getLocale().equals("FR")).findFirst();
+                .stream().filter(o -> o.getLocale().equals(DEFAULT_LOCALE.name())).findFirst();
 
         // A name in french must be at least provided
         if (localizedProductFr.isEmpty()) {
-            throw new Exception("A name in french must be at least provided");
+            throw new InvalidInputException("A name in french must be at least provided");
+        }
+    }
+
+    private Page<Product> findProducts(Optional<Long> shopId, Optional<Long> categoryId, Pageable pageable) {
+        if (shopId.isPresent() && categoryId.isPresent()) {
+            return productRepository.findByShopAndCategory(shopId.get(), categoryId.get(), pageable);
+        } else if (shopId.isPresent()) {
+            return productRepository.findByShop(shopId.get(), pageable);
         }
+        return productRepository.findByOrderByIdAsc(pageable);
+    }
+
+    private <T> CursorPage<T> findProductsAfter(
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Optional<String> after,
+            int size,
+            boolean withCount,
+            Function<List<Product>, List<T>> toViews
+    ) {
+        Specification<Product> filters = ProductSpecifications.withFilters(shopId, categoryId);
+        Sort sort = Sort.by("id");
+        ScrollPosition position = CursorPagination.decode(after, Product.class, sort);
+        Window<Product> window = productRepository.findBy(
+                filters, query -> query.sortBy(sort).limit(size).scroll(position)
+        );
+        return CursorPagination.toPage(window, toViews, withCount ? productRepository.count(filters) : null);
     }
 
-    private Product getProduct(Long id) throws Exception {
-        Optional<Product> product = productRepository.findById(id);
-        if (product.isEmpty()) {
-            throw new Exception("Product with id " + id + " not found");
+    private List<List<Integer>> getValidChunks(List<BatchItemResult> items) {
+        List<Integer> validIndexes = items.stream()
+                .filter(BatchItemResult::isValid)
+                .map(BatchItemResult::getIndex)
+                .toList();
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int i = 0; i < validIndexes.size(); i += batchSize) {
+            chunks.add(validIndexes.subList(i, Math.min(i + batchSize, validIndexes.size())));
         }
-        return product.get();
+        return chunks;
     }
 
+    private Product getProduct(Long id) {
+        return productRepository.findById(id).orElseThrow(() -> new NotFoundException("Product", id));
+    }
+
+    private Long getShopId(Product product) {
+        return product.getShop() == null ? null : product.getShop().getId();
+    }
+
+    private BatchResult toBatchResult(List<BatchItemResult> items) {
+        BatchResult result = new BatchResult();
+        result.setItems(items);
+        result.setSaved((int) items.stream().filter(BatchItemResult::isValid).count());
+        result.setFailed(items.size() - result.getSaved());
+        return result;
+    }
+
+    // The counters of the shop are updated by ShopStatsService after the product is saved, the shop read with the
+    // product is read again so that the returned product has them
+    private void refreshShop(Product product) {
+        if (product.getShop() != null) {
+            em.refresh(product.getShop());
+        }
+    }
+
+    private Product saveProduct(Product product) {
+        // Check that product exists at least in french and check name's length
+        checkLocalizedProducts(product);
+
+        Product newProduct = productRepository.save(product);
+        em.flush();
+        em.refresh(newProduct);
+        return newProduct;
+    }
+
+    private ProductView withShop(ProductView product, ShopView shop) {
+        return new ProductView(product.categories(), product.id(), product.price(), shop, product.localizedProducts());
+    }
+
+    // Value of the products cache
+    private record CachedProduct(ProductView product, Long shopId) {
+    }
 }
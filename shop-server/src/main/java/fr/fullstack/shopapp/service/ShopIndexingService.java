@@ -0,0 +1,139 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.SearchIndexState;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.jpa.SearchIndexStateRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import fr.fullstack.shopapp.util.SqlLiterals;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.session.SearchSession;
+import org.hibernate.search.mapper.orm.work.SearchIndexingPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The shops index is written by Hibernate Search: the changes made through the application are written in the
+ * outbox table by the same transaction, then sent in bulk by the outbox-polling agent. This service indexes the
+ * shops written outside of Hibernate (sql scripts, imports), which a trigger stamps with external_updated_at.
+ */
+@Service
+public class ShopIndexingService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShopIndexingService.class);
+    private static final String INDEX_NAME = "shops";
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private SearchIndexStateRepository searchIndexStateRepository;
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    // Name of the connections of the application, whose writes are not stamped by the triggers
+    @Value("${spring.datasource.hikari.data-source-properties.ApplicationName:shop-server}")
+    private String applicationName;
+
+    @Value("${shop.search.sync.batch-size:500}")
+    private int batchSize;
+
+    // Hibernate Search is disabled by the import profile and the benchmarks
+    @Value("${spring.jpa.properties.hibernate.search.enabled:true}")
+    private boolean searchEnabled;
+
+    private TransactionTemplate transaction;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Install the trigger on the databases created by Hibernate (ddl-auto) rather than by create_tables.sql, and again
+     * with the configured application name on the others
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createExternalUpdateTrigger() {
+        try {
+            shopRepository.createExternalUpdateFunction();
+            // The arguments of a trigger are literals, they cannot be bound
+            transaction.executeWithoutResult(status -> em.createNativeQuery(
+                    "CREATE OR REPLACE TRIGGER shops_external_updated_at BEFORE INSERT OR UPDATE ON shops "
+                            + "FOR EACH ROW EXECUTE FUNCTION shops_set_external_updated_at("
+                            + SqlLiterals.quote(applicationName) + ")"
+            ).executeUpdate());
+        } catch (DataAccessException | PersistenceException e) {
+            // The triggers are written in PL/pgSQL, the writes made outside the application are not indexed on the
+            // other databases
+            LOGGER.warn("The trigger of the shops written outside the application is not installed", e);
+        }
+    }
+
+    /**
+     * Index all the shops in background on the first start, when the index is empty or when its documents miss a
+     * field added to the mapping (the schema update adds the field, not its values)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void indexIfEmpty() {
+        if (!searchEnabled) {
+            return;
+        }
+
+        SearchSession session = Search.session(em);
+        Optional<SearchIndexState> state = searchIndexStateRepository.findById(INDEX_NAME);
+        if (state.isEmpty() || session.search(Shop.class).where(f -> f.matchAll()).fetchTotalHitCount() == 0
+                || session.search(Shop.class).where(f -> f.not(f.exists().field("namePrefix")))
+                .fetchTotalHitCount() > 0) {
+            SearchIndexState massIndexed = state.orElseGet(SearchIndexState::new);
+            massIndexed.setName(INDEX_NAME);
+            massIndexed.setMassIndexedAt(Instant.now());
+            searchIndexStateRepository.save(massIndexed);
+            session.massIndexer(Shop.class).start();
+        }
+    }
+
+    /**
+     * Index the shops stamped by the trigger, by batches committed one at a time, and clear their stamp in the same
+     * transaction. The rows of a transaction still running are not visible yet, they are read by a later call once
+     * committed, so no write is skipped whatever the duration of its transaction.
+     */
+    @Scheduled(fixedDelayString = "${shop.search.sync.interval:10000}")
+    public void indexExternalUpdates() {
+        if (!searchEnabled) {
+            return;
+        }
+
+        int indexed;
+        do {
+            indexed = transaction.execute(status -> {
+                List<Long> shopIds = shopRepository.findExternallyUpdatedIds(batchSize);
+                // With outbox-polling, the plan is written in the outbox and sent by the agent in bulk requests,
+                // which loads the shops after this commit
+                SearchIndexingPlan indexingPlan = Search.session(em).indexingPlan();
+                shopIds.forEach(id -> indexingPlan.addOrUpdate(em.getReference(Shop.class, id)));
+                if (!shopIds.isEmpty()) {
+                    shopRepository.clearExternalUpdates(shopIds);
+                }
+                return shopIds.size();
+            });
+        } while (indexed == batchSize);
+    }
+}
@@ -1,237 +1,273 @@
 package fr.fullstack.shopapp.service;
 
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.dto.ProductView;
 import fr.fullstack.shopapp.dto.ShopDTO;
-import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.dto.ShopView;
+import fr.fullstack.shopapp.exception.InvalidInputException;
+import fr.fullstack.shopapp.exception.NotFoundException;
 import fr.fullstack.shopapp.model.Shop;
-import fr.fullstack.shopapp.repository.elasticsearch.ShopElasticRepository;
+import fr.fullstack.shopapp.repository.jpa.ProductRepository;
 import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopSpecifications;
+import fr.fullstack.shopapp.repository.search.ShopSearchRepository;
+import fr.fullstack.shopapp.util.CursorPagination;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
-import java.util.Comparator;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 public class ShopService {
+    @Autowired
+    private ChangeCounterService changeCounterService;
+
     @PersistenceContext
     private EntityManager em;
 
+    @Autowired
+    private ProductIndexingService productIndexingService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
     @Autowired
     private ShopRepository shopRepository;
 
     @Autowired
-    private ShopElasticRepository shopElasticRepository;
+    private ShopSearchRepository shopSearchRepository;
+
+    @Autowired
+    private ShopStatsService shopStatsService;
+
+    @Autowired
+    private ShopSuggestService shopSuggestService;
+
+    @Autowired
+    private ViewService viewService;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
 
     @Transactional
-    public Shop createShop(Shop shop) throws Exception {
-        try {
-            Shop newShop = shopRepository.save(shop);
-            // Refresh the entity after the save. Otherwise, @Formula does not work.
-            em.flush();
-            em.refresh(newShop);
-            return newShop;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    public Shop createShop(Shop shop) {
+        Shop newShop = shopRepository.save(shop);
+        em.flush();
+        shopStatsService.createStats(newShop.getId());
+        // Refresh the entity after the save to read its stats
+        em.refresh(newShop);
+        changeCounterService.increment(ChangeCounterService.SHOPS);
+        shopSuggestService.onShopSaved(newShop.getId(), newShop.getName());
+        return newShop;
     }
 
+    // The products of the shop are deleted with it
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.SHOPS, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.FACETS, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true)
+    })
     @Transactional
-    public void deleteShopById(long id) throws Exception {
-        try {
-            Shop shop = getShop(id);
-            // delete nested relations with products
-            deleteNestedRelations(shop);
-            shopRepository.deleteById(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    public void deleteShopById(long id) {
+        Shop shop = getShop(id);
+        // delete nested relations with products
+        deleteNestedRelations(shop);
+        shopStatsService.deleteStats(id);
+        shopRepository.deleteById(id);
+        changeCounterService.increment(ChangeCounterService.SHOPS);
+        shopSuggestService.onShopDeleted(id);
     }
 
-    public Shop getShopById(long id) throws Exception {
-        try {
-            return getShop(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    @Cacheable(cacheNames = CacheConfig.SHOPS, key = "#id")
+    @Transactional(readOnly = true)
+    public ShopView getShopById(long id) {
+        return viewService.toShopViews(List.of(getShop(id))).get(0);
     }
 
-    public Page<Shop> getShopList(
+    /**
+     * @return the strong ETag of the shop, empty if the shop does not exist
+     */
+    public Optional<String> getShopETag(long id) {
+        return shopRepository.findETagById(id).map(version -> "\"" + version + "\"");
+    }
+
+    @Transactional(readOnly = true)
+    public Page<ShopView> getShopList(
             Optional<String> sortBy,
             Optional<Boolean> inVacations,
-            Optional<String> createdBefore,
             Optional<String> createdAfter,
+            Optional<String> createdBefore,
             Pageable pageable
     ) {
-        Page<Shop> shopList = getShopListWithFilter(inVacations, createdBefore, createdAfter, pageable);
-        if (sortBy.isPresent() && shopList != null) {
-            return switch (sortBy.get()) {
-                case "name" -> new PageImpl<>(
-                        shopList.getContent().stream()
-                                .sorted(Comparator.comparing(Shop::getName))
-                                .collect(Collectors.toList()), pageable, shopList.getTotalElements());
-                case "createdAt" -> new PageImpl<>(
-                        shopList.getContent().stream()
-                                .sorted(Comparator.comparing(Shop::getCreatedAt))
-                                .collect(Collectors.toList()), pageable, shopList.getTotalElements());
-                default -> new PageImpl<>(
-                        shopList.getContent().stream()
-                                .sorted(Comparator.comparing(Shop::getNbProducts))
-                                .collect(Collectors.toList()), pageable, shopList.getTotalElements());
-            };
-        }
-        // SORT
-        if (sortBy.isPresent()) {
-            return switch (sortBy.get()) {
-                case "name" -> shopRepository.findByOrderByNameAsc(pageable);
-                case "createdAt" -> shopRepository.findByOrderByCreatedAtAsc(pageable);
-                default -> shopRepository.findByOrderByNbProductsAsc(pageable);
-            };
-        }
-
-        // FILTERS
-        if (shopList != null) {
-            return shopList;
-        }
-
-        // NONE
-        return shopRepository.findByOrderByIdAsc(pageable);
+        // Filters and sort are pushed down to a single query, so the whole result is sorted and not only a page
+        Specification<Shop> filters = getShopFilters(sortBy, inVacations, createdAfter, createdBefore);
+        Page<Shop> shops = shopRepository.findAll(
+                filters, PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), getShopSort(sortBy))
+        );
+        return new PageImpl<>(
+                viewService.toShopViews(shops.getContent()), shops.getPageable(), shops.getTotalElements()
+        );
     }
 
-    public List<ShopDTO> fullTextShopSearch(String input, Optional<Boolean> inVacations,
-                                            Optional<String> createdAfter, Optional<String> createdBefore) {
-
-
-        List<Shop> shops = shopElasticRepository.findByNameContaining(input);
-        if (inVacations.isPresent()) {
-            shops = filterByVacationStatus(shops, inVacations.get());
-        }
-
-        if (createdAfter.isPresent()) {
-            LocalDate afterDate = LocalDate.parse(createdAfter.get());
-            shops = filterByCreationDateAfter(shops, afterDate);
-        }
-
-        if (createdBefore.isPresent()) {
-            LocalDate beforeDate = LocalDate.parse(createdBefore.get());
-            shops = filterByCreationDateBefore(shops, beforeDate);
-        }
+    @Transactional(readOnly = true)
+    public CursorPage<ShopView> getShopListAfter(
+            Optional<String> sortBy,
+            Optional<Boolean> inVacations,
+            Optional<String> createdAfter,
+            Optional<String> createdBefore,
+            Optional<String> after,
+            int size,
+            boolean withCount
+    ) {
+        Specification<Shop> filters = getShopFilters(sortBy, inVacations, createdAfter, createdBefore);
+        Sort sort = getShopSort(sortBy);
+        ScrollPosition position = CursorPagination.decode(after, Shop.class, sort);
+        Window<Shop> window = shopRepository.findBy(
+                filters, query -> query.sortBy(sort).limit(size).scroll(position)
+        );
+        return CursorPagination.toPage(
+                window, viewService::toShopViews, withCount ? shopRepository.count(filters) : null
+        );
+    }
 
-        return shops.stream().map(this::shopToDTO).toList();
+    // Not transactional: no database connection is held while waiting for Elasticsearch, only during the hydration
+    public Page<ShopDTO> fullTextShopSearch(String input, Optional<Boolean> inVacations,
+                                            Optional<String> createdAfter, Optional<String> createdBefore,
+                                            boolean withProducts, Pageable pageable) {
+        Page<Long> ids = shopSearchRepository.search(
+                input,
+                inVacations,
+                parseDate(createdAfter, "createdAfter"),
+                parseDate(createdBefore, "createdBefore"),
+                pageable
+        );
+        List<ShopDTO> shops = readOnlyTransaction.execute(status -> shopsToDTO(ids.getContent(), withProducts));
+        return new PageImpl<>(shops, pageable, ids.getTotalElements());
     }
 
+    @CacheEvict(cacheNames = CacheConfig.SHOPS, key = "#shop.id")
     @Transactional
-    public Shop updateShop(Shop shop) throws Exception {
-        try {
-            getShop(shop.getId());
-            return this.createShop(shop);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    public Shop updateShop(Shop shop) {
+        // The clients do not send the version, the update applies to the current one
+        long previousVersion = getShop(shop.getId()).getVersion();
+        shop.setVersion(previousVersion);
+        Shop updatedShop = this.createShop(shop);
+        // The flush increments the version when the shop row changed. The opening hours are part of the shop but do
+        // not make its row dirty, the version is then incremented here, so that it is incremented once
+        if (updatedShop.getVersion() == previousVersion) {
+            em.lock(updatedShop, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
         }
+        return updatedShop;
     }
 
     private void deleteNestedRelations(Shop shop) {
-        List<Product> products = shop.getProducts();
-        for (Product product : products) {
-            product.setShop(null);
-            em.merge(product);
-            em.flush();
-        }
+        List<Long> productIds = productRepository.findIdsByShopId(shop.getId());
+        productRepository.removeShop(shop.getId());
+        // The bulk update is not seen by Hibernate Search, the products are indexed again once it cleared the session
+        productIndexingService.reindex(productIds);
     }
 
-    private Shop getShop(Long id) throws Exception {
-        Optional<Shop> shop = shopRepository.findById(id);
-        if (shop.isEmpty()) {
-            throw new Exception("Shop with id " + id + " not found");
-        }
-        return shop.get();
+    private Shop getShop(Long id) {
+        return shopRepository.findById(id).orElseThrow(() -> new NotFoundException("Shop", id));
     }
 
-    private Page<Shop> getShopListWithFilter(
+    private Specification<Shop> getShopFilters(
+            Optional<String> sortBy,
             Optional<Boolean> inVacations,
             Optional<String> createdAfter,
-            Optional<String> createdBefore,
-            Pageable pageable
+            Optional<String> createdBefore
     ) {
-        if (inVacations.isPresent() && createdBefore.isPresent() && createdAfter.isPresent()) {
-            return shopRepository.findByInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
-                    inVacations.get(),
-                    LocalDate.parse(createdAfter.get()),
-                    LocalDate.parse(createdBefore.get()),
-                    pageable
-            );
-        }
-
-        if (inVacations.isPresent() && createdBefore.isPresent()) {
-            return shopRepository.findByInVacationsAndCreatedAtLessThan(
-                    inVacations.get(), LocalDate.parse(createdBefore.get()), pageable
-            );
-        }
-
-        if (inVacations.isPresent() && createdAfter.isPresent()) {
-            return shopRepository.findByInVacationsAndCreatedAtGreaterThan(
-                    inVacations.get(), LocalDate.parse(createdAfter.get()), pageable
-            );
-        }
-
-        if (inVacations.isPresent()) {
-            return shopRepository.findByInVacations(inVacations.get(), pageable);
+        Specification<Shop> filters = ShopSpecifications.withFilters(
+                inVacations, parseDate(createdAfter, "createdAfter"), parseDate(createdBefore, "createdBefore")
+        );
+        if (getShopSort(sortBy).getOrderFor("nbProducts") != null) {
+            return filters.and(ShopSpecifications.withStats());
         }
+        return filters;
+    }
 
-        if (createdBefore.isPresent() && createdAfter.isPresent()) {
-            return shopRepository.findByCreatedAtBetween(
-                    LocalDate.parse(createdAfter.get()), LocalDate.parse(createdBefore.get()), pageable
-            );
+    private Sort getShopSort(Optional<String> sortBy) {
+        // The id is always added to have a stable order between pages
+        if (sortBy.isEmpty()) {
+            return Sort.by("id");
         }
+        return switch (sortBy.get()) {
+            case "name" -> Sort.by("name", "id");
+            case "createdAt" -> Sort.by("createdAt", "id");
+            default -> Sort.by("nbProducts", "id");
+        };
+    }
 
-        if (createdBefore.isPresent()) {
-            return shopRepository.findByCreatedAtLessThan(
-                    LocalDate.parse(createdBefore.get()), pageable
-            );
+    /**
+     * @throws InvalidInputException if the date is not formatted as yyyy-MM-dd
+     */
+    private Optional<LocalDate> parseDate(Optional<String> date, String name) {
+        try {
+            return date.map(LocalDate::parse);
+        } catch (DateTimeParseException e) {
+            throw new InvalidInputException(name + " must be a date yyyy-MM-dd");
         }
-
-        return createdAfter.map(s -> shopRepository.findByCreatedAtGreaterThan(
-                LocalDate.parse(s), pageable
-        )).orElse(null);
-
     }
 
-    private List<Shop> filterByVacationStatus(List<Shop> shops, Boolean inVacation) {
-        return shops.stream()
-                .filter(shop -> shop.getInVacations() == inVacation)
-                .toList();
+    private ShopDTO shopToDTO(ShopView shop, List<ProductView> products) {
+        ShopDTO dto = new ShopDTO();
+        dto.setId(shop.id());
+        dto.setCreatedAt(shop.createdAt());
+        dto.setInVacations(shop.inVacations());
+        dto.setName(shop.name());
+        dto.setNbProducts(shop.nbProducts());
+        dto.setOpeningHours(shop.openingHours());
+        dto.setProducts(products);
+        dto.setNumberOfCategories(shop.nbCategory());
+        return dto;
     }
 
-    private List<Shop> filterByCreationDateAfter(List<Shop> shops, LocalDate afterDate) {
-        return shops.stream()
-                .filter(shop -> shop.getCreatedAt().isAfter(afterDate))
-                .toList();
-    }
+    private List<ShopDTO> shopsToDTO(List<Long> ids, boolean withProducts) {
+        // The search hits only hold the ids: the shops with their stats and opening hours, then their products if
+        // asked, are loaded with a fixed number of queries for all the hits
+        if (ids.isEmpty()) {
+            return List.of();
+        }
 
-    private List<Shop> filterByCreationDateBefore(List<Shop> shops, LocalDate beforeDate) {
-        return shops.stream()
-                .filter(shop -> shop.getCreatedAt().isBefore(beforeDate))
-                .toList();
-    }
+        Map<Long, ShopView> shops = viewService.toShopViews(shopRepository.findAllById(ids)).stream()
+                .collect(Collectors.toMap(ShopView::id, Function.identity()));
+        Map<Long, List<ProductView>> products = withProducts
+                ? viewService.toProductViews(productRepository.findByShopIdIn(ids)).stream()
+                        .collect(Collectors.groupingBy(product -> product.shop().id()))
+                : Map.of();
 
-    private ShopDTO shopToDTO(Shop shop) {
-        ShopDTO dto = new ShopDTO();
-        dto.setId(shop.getId());
-        dto.setCreatedAt(shop.getCreatedAt());
-        dto.setInVacations(shop.getInVacations());
-        dto.setName(shop.getName());
-        dto.setNbProducts(shop.getNbProducts());
-        dto.setOpeningHours(shop.getOpeningHours());
-        dto.setProducts(shop.getProducts());
-        dto.setNumberOfCategories(shop.getNbCategory());
-        return dto;
+        return ids.stream()
+                .filter(shops::containsKey)
+                .map(id -> shopToDTO(shops.get(id), withProducts ? products.getOrDefault(id, List.of()) : null))
+                .toList();
     }
 }
@@ -0,0 +1,161 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Maintains the shop_stats projection (number of products and of distinct categories per shop)
+ * read by Shop. Product counters are updated incrementally, the distinct category count is
+ * recomputed only for the shops touched by a write.
+ */
+@Service
+public class ShopStatsService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShopStatsService.class);
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ChangeCounterService changeCounterService;
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    private TransactionTemplate transaction;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Transactional
+    public void createStats(long shopId) {
+        shopRepository.createStats(shopId);
+    }
+
+    @Transactional
+    public void deleteStats(long shopId) {
+        shopRepository.deleteStats(shopId);
+    }
+
+    /**
+     * Install the trigger creating the stats of the shops inserted outside the application on the databases created
+     * by Hibernate (ddl-auto) rather than by create_tables.sql, then backfill the stats of the shops inserted before
+     * it (sql scripts, previous versions)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createMissingStats() {
+        try {
+            shopRepository.createStatsFunction();
+            shopRepository.createStatsTrigger();
+        } catch (DataAccessException e) {
+            // The trigger is written in PL/pgSQL, on the other databases the shops inserted outside the application
+            // are left out of the listing sorted by nbProducts until the next start
+            LOGGER.warn("The trigger creating the stats of the shops is not installed", e);
+        }
+
+        transaction.executeWithoutResult(status -> {
+            if (shopRepository.createMissingStats() > 0) {
+                changeCounterService.increment(ChangeCounterService.SHOPS);
+            }
+        });
+    }
+
+    @Transactional
+    public void onCategoryDeleted(Collection<Long> shopIds) {
+        refreshNbCategories(shopIds);
+    }
+
+    @Transactional
+    public void onProductDeleted(Long shopId) {
+        if (shopId != null) {
+            shopRepository.incrementNbProducts(shopId, -1);
+            refreshNbCategories(Set.of(shopId));
+        }
+    }
+
+    /**
+     * @param previousShopId the shop of the product before the write, null for a creation
+     * @param product        the saved product
+     */
+    @Transactional
+    public void onProductSaved(Long previousShopId, Product product) {
+        onProductsSaved(Collections.singletonList(previousShopId), Collections.singletonList(getShopId(product)));
+    }
+
+    /**
+     * Apply the counters of several saved products with one update per shop
+     *
+     * @param previousShopIds the shop of each product before the write, null for a creation
+     * @param shopIds         the shop of each product after the write, in the same order
+     */
+    @Transactional
+    public void onProductsSaved(List<Long> previousShopIds, List<Long> shopIds) {
+        Map<Long, Long> deltas = new HashMap<>();
+        Set<Long> touchedShopIds = new HashSet<>();
+        for (int i = 0; i < shopIds.size(); i++) {
+            Long previousShopId = previousShopIds.get(i);
+            Long shopId = shopIds.get(i);
+            if (!Objects.equals(previousShopId, shopId)) {
+                if (previousShopId != null) {
+                    deltas.merge(previousShopId, -1L, Long::sum);
+                }
+                if (shopId != null) {
+                    deltas.merge(shopId, 1L, Long::sum);
+                }
+            }
+            if (previousShopId != null) {
+                touchedShopIds.add(previousShopId);
+            }
+            if (shopId != null) {
+                touchedShopIds.add(shopId);
+            }
+        }
+
+        deltas.forEach((shopId, delta) -> {
+            if (delta != 0) {
+                shopRepository.incrementNbProducts(shopId, delta);
+            }
+        });
+        refreshNbCategories(touchedShopIds);
+    }
+
+    private Long getShopId(Product product) {
+        return product.getShop() == null ? null : product.getShop().getId();
+    }
+
+    private void refreshNbCategories(Collection<Long> shopIds) {
+        if (!shopIds.isEmpty()) {
+            shopRepository.refreshNbCategories(shopIds);
+        }
+        // The cached shops, also read by the cached products, and the lists of shops hold their stats
+        changeCounterService.increment(ChangeCounterService.SHOPS);
+        Cache shops = cacheManager.getCache(CacheConfig.SHOPS);
+        shopIds.forEach(shops::evict);
+        // The product facets of the shops change with the same writes
+        Cache facets = cacheManager.getCache(CacheConfig.FACETS);
+        shopIds.forEach(facets::evict);
+    }
+}
@@ -0,0 +1,109 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.dto.ShopSuggestion;
+import fr.fullstack.shopapp.exception.BulkheadFullException;
+import fr.fullstack.shopapp.exception.InvalidInputException;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.repository.search.ShopSearchRepository;
+import fr.fullstack.shopapp.util.ShopNameIndex;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.search.util.common.SearchException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Suggestions of shops for the beginning of their name, typed by the user. They are read from the namePrefix field of
+ * the shops index, or from an in-memory index of the names when Elasticsearch fails or is slower than the timeout.
+ * The in-memory index is updated by the writes of ShopService once committed, and loaded again periodically for the
+ * writes of the other instances and of SQL scripts.
+ */
+@Service
+public class ShopSuggestService {
+    private final Counter fallbacks;
+
+    @Value("${shop.suggest.max-size:50}")
+    private int maxSize;
+
+    private final ShopNameIndex nameIndex = new ShopNameIndex();
+
+    @Value("${shop.suggest.search-timeout:50ms}")
+    private Duration searchTimeout;
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    @Autowired
+    private ShopSearchRepository shopSearchRepository;
+
+    public ShopSuggestService(MeterRegistry registry) {
+        fallbacks = Counter.builder("shop.suggest.fallbacks")
+                .description("Suggestions read from the in-memory index because Elasticsearch failed")
+                .register(registry);
+    }
+
+    public void onShopDeleted(long id) {
+        afterCommit(() -> nameIndex.remove(id));
+    }
+
+    public void onShopSaved(long id, String name) {
+        afterCommit(() -> nameIndex.put(id, name));
+    }
+
+    /**
+     * A write committed while the names are loaded may only be seen at the next refresh
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(
+            fixedDelayString = "${shop.suggest.refresh-interval:300000}",
+            initialDelayString = "${shop.suggest.refresh-interval:300000}"
+    )
+    @Transactional(readOnly = true)
+    public void refreshIndex() {
+        nameIndex.replaceAll(shopRepository.findSuggestions());
+    }
+
+    /**
+     * @return at most size shops with a word of their name starting with each word of the prefix
+     */
+    @Timed(value = "shop.suggest", description = "Suggestions of shop names", histogram = true)
+    public List<ShopSuggestion> suggest(String prefix, int size) {
+        if (size < 1 || size > maxSize) {
+            throw new InvalidInputException("Size must be between 1 and " + maxSize);
+        }
+        if (prefix.isBlank()) {
+            return List.of();
+        }
+
+        try {
+            return shopSearchRepository.suggest(prefix, size, searchTimeout);
+        } catch (SearchException | BulkheadFullException e) {
+            fallbacks.increment();
+            return nameIndex.suggest(prefix, size);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,150 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.dto.CategoryView;
+import fr.fullstack.shopapp.dto.LocalizedProductView;
+import fr.fullstack.shopapp.dto.OpeningHoursView;
+import fr.fullstack.shopapp.dto.ProductLocaleView;
+import fr.fullstack.shopapp.dto.ProductView;
+import fr.fullstack.shopapp.dto.ShopView;
+import fr.fullstack.shopapp.model.Locale;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.jpa.ProductRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the read models returned by the GET endpoints from a page of entities. The associations of the whole page
+ * are read with one query each, the lazy associations of the entities are never walked.
+ */
+@Service
+public class ViewService {
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    /**
+     * @param products products with their shop, which is always fetched with the product
+     * @param locale   locale of the names and descriptions, the french ones are used for the untranslated products
+     */
+    public List<ProductLocaleView> toProductLocaleViews(List<Product> products, Locale locale) {
+        if (products.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> ids = products.stream().map(Product::getId).toList();
+        Map<Long, List<CategoryView>> categories = getCategories(ids);
+        Map<Long, ProductRepository.LocalizedProductRow> localizedProducts = productRepository
+                .findLocalizedProductsByProductIdInAndLocale(ids, locale.name()).stream()
+                .collect(Collectors.toMap(
+                        ProductRepository.LocalizedProductRow::getProductId, Function.identity(), (first, other) -> first
+                ));
+        Map<Long, ShopView> shops = getShops(products);
+
+        return products.stream()
+                .map(product -> {
+                    ProductRepository.LocalizedProductRow localizedProduct = localizedProducts.get(product.getId());
+                    return new ProductLocaleView(
+                            categories.getOrDefault(product.getId(), List.of()),
+                            localizedProduct == null ? null : localizedProduct.getDescription(),
+                            product.getId(),
+                            localizedProduct == null ? null : localizedProduct.getLocale(),
+                            localizedProduct == null ? null : localizedProduct.getName(),
+                            product.getPrice(),
+                            product.getShop() == null ? null : shops.get(product.getShop().getId())
+                    );
+                })
+                .toList();
+    }
+
+    /**
+     * @param products products with their shop, which is always fetched with the product
+     */
+    public List<ProductView> toProductViews(List<Product> products) {
+        if (products.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> ids = products.stream().map(Product::getId).toList();
+        Map<Long, List<CategoryView>> categories = getCategories(ids);
+        Map<Long, List<LocalizedProductView>> localizedProducts = productRepository
+                .findLocalizedProductsByProductIdIn(ids).stream()
+                .collect(Collectors.groupingBy(
+                        ProductRepository.LocalizedProductRow::getProductId,
+                        Collectors.mapping(
+                                row -> new LocalizedProductView(
+                                        row.getDescription(), row.getId(), row.getLocale(), row.getName()
+                                ),
+                                Collectors.toList()
+                        )
+                ));
+        Map<Long, ShopView> shops = getShops(products);
+
+        return products.stream()
+                .map(product -> new ProductView(
+                        categories.getOrDefault(product.getId(), List.of()),
+                        product.getId(),
+                        product.getPrice(),
+                        product.getShop() == null ? null : shops.get(product.getShop().getId()),
+                        localizedProducts.getOrDefault(product.getId(), List.of())
+                ))
+                .toList();
+    }
+
+    public List<ShopView> toShopViews(List<Shop> shops) {
+        if (shops.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, List<OpeningHoursView>> openingHours = shopRepository
+                .findOpeningHoursByShopIdIn(shops.stream().map(Shop::getId).toList()).stream()
+                .collect(Collectors.groupingBy(
+                        ShopRepository.OpeningHoursRow::getShopId,
+                        Collectors.mapping(
+                                row -> new OpeningHoursView(
+                                        row.getCloseAt(), row.getDay(), row.getId(), row.getOpenAt()
+                                ),
+                                Collectors.toList()
+                        )
+                ));
+
+        return shops.stream()
+                .map(shop -> new ShopView(
+                        shop.getCreatedAt(),
+                        shop.getId(),
+                        shop.getInVacations(),
+                        shop.getName(),
+                        shop.getNbProducts(),
+                        shop.getNbCategory(),
+                        openingHours.getOrDefault(shop.getId(), List.of())
+                ))
+                .toList();
+    }
+
+    private Map<Long, List<CategoryView>> getCategories(List<Long> productIds) {
+        return productRepository.findCategoriesByProductIdIn(productIds).stream()
+                .collect(Collectors.groupingBy(
+                        ProductRepository.CategoryRow::getProductId,
+                        Collectors.mapping(row -> new CategoryView(row.getId(), row.getName()), Collectors.toList())
+                ));
+    }
+
+    private Map<Long, ShopView> getShops(List<Product> products) {
+        // The products of a shop do not share the same instance of the shop when read by a stateless session
+        List<Shop> shops = products.stream()
+                .map(Product::getShop)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toMap(Shop::getId, Function.identity(), (first, other) -> first))
+                .values().stream().toList();
+        return toShopViews(shops).stream().collect(Collectors.toMap(ShopView::id, Function.identity()));
+    }
+}
@@ -0,0 +1,77 @@
+package fr.fullstack.shopapp.util;
+
+import fr.fullstack.shopapp.exception.BulkheadFullException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of concurrent calls to a resource. The callers over the limit wait for a permit in arrival order
+ * (parking a virtual thread does not hold a carrier thread), then fail with a BulkheadFullException after the
+ * maximum wait, so that a slow resource cannot hold every request of the application.
+ */
+public class Bulkhead {
+    private final Duration maxWait;
+    private final String name;
+    private final Semaphore permits;
+    private final Counter rejected;
+    private final Timer waits;
+
+    public Bulkhead(String name, int maxConcurrentCalls, Duration maxWait, MeterRegistry registry) {
+        this.maxWait = maxWait;
+        this.name = name;
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+        Gauge.builder("bulkhead.available.permits", permits, Semaphore::availablePermits)
+                .description("Calls that can start without waiting")
+                .tag("name", name)
+                .register(registry);
+        Gauge.builder("bulkhead.max.permits", () -> maxConcurrentCalls)
+                .tag("name", name)
+                .register(registry);
+        this.rejected = Counter.builder("bulkhead.rejected")
+                .description("Calls rejected after waiting for a permit for the maximum wait")
+                .tag("name", name)
+                .register(registry);
+        this.waits = Timer.builder("bulkhead.wait")
+                .description("Wait for a permit")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void acquire() {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkheadFullException(name);
+        } finally {
+            waits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new BulkheadFullException(name);
+        }
+    }
+
+    public <T> T call(Supplier<T> call) {
+        acquire();
+        try {
+            return call.get();
+        } finally {
+            release();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+}
@@ -0,0 +1,96 @@
+package fr.fullstack.shopapp.util;
+
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.exception.InvalidInputException;
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.util.ClassUtils;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Opaque cursors for keyset pagination: the cursor holds the values of the sort keys (and the id) of the last
+ * row of a page, the next page is read with a "(sort key, id) > cursor" predicate instead of an offset. The keys are
+ * named after the sort properties, so a cursor is only accepted with the sort of its page.
+ */
+public class CursorPagination {
+    private CursorPagination() {
+    }
+
+    public static String encode(ScrollPosition position) {
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Object> key : ((KeysetScrollPosition) position).getKeys().entrySet()) {
+            keys.add(key.getKey() + "=" + URLEncoder.encode(String.valueOf(key.getValue()), StandardCharsets.UTF_8));
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.join("&", keys).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor the cursor returned with the previous page, empty for the first page
+     * @param type   the entity type, used to convert the sort key values back
+     * @param sort   the sort of the requested page, which must be the sort of the previous page
+     */
+    public static ScrollPosition decode(Optional<String> cursor, Class<?> type, Sort sort) {
+        if (cursor.isEmpty() || cursor.get().isBlank()) {
+            return ScrollPosition.keyset();
+        }
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor.get()), StandardCharsets.UTF_8);
+            for (String key : decoded.split("&")) {
+                String[] entry = key.split("=", 2);
+                Class<?> keyType = BeanUtils.findPropertyType(entry[0], type);
+                keys.put(entry[0], convert(URLDecoder.decode(entry[1], StandardCharsets.UTF_8), keyType));
+            }
+        } catch (RuntimeException e) {
+            throw new InvalidInputException("Invalid cursor " + cursor.get());
+        }
+
+        List<String> sortKeys = sort.stream().map(Sort.Order::getProperty).toList();
+        if (!keys.keySet().equals(new HashSet<>(sortKeys))) {
+            throw new InvalidInputException(
+                    "Cursor " + cursor.get() + " was not returned for the sort " + String.join(",", sortKeys)
+            );
+        }
+        return ScrollPosition.forward(keys);
+    }
+
+    /**
+     * @param toViews converts the entities of the window to the content of the page
+     */
+    public static <T, R> CursorPage<R> toPage(Window<T> window, Function<List<T>, List<R>> toViews,
+                                              Long totalElements) {
+        CursorPage<R> page = new CursorPage<>();
+        page.setContent(toViews.apply(window.getContent()));
+        page.setSize(window.size());
+        page.setTotalElements(totalElements);
+        if (window.hasNext() && !window.isEmpty()) {
+            page.setNextCursor(encode(window.positionAt(window.size() - 1)));
+        }
+        return page;
+    }
+
+    private static Object convert(String value, Class<?> type) {
+        if (LocalDate.class.equals(type)) {
+            return LocalDate.parse(value);
+        }
+        return DefaultConversionService.getSharedInstance().convert(value, ClassUtils.resolvePrimitiveIfNecessary(type));
+    }
+}
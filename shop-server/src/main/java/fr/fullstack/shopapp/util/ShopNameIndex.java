@@ -0,0 +1,115 @@
+package fr.fullstack.shopapp.util;
+
+import fr.fullstack.shopapp.dto.ShopSuggestion;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory prefix index of the shop names, read by the suggestions when Elasticsearch does not answer. Each word of a
+ * name is a key of a sorted map, so the shops with a word starting with a prefix are a range of the map: the same
+ * lookup as a prefix tree, in O(log n) plus the number of keys read. The words are normalized like the name_prefix
+ * analyzer of Elasticsearch (lower case, without accents).
+ * <p>
+ * The reads are not locked, the writes are serialized.
+ */
+public class ShopNameIndex {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private volatile Entries entries = new Entries();
+
+    public synchronized void put(long id, String name) {
+        entries.put(id, name);
+    }
+
+    public synchronized void remove(long id) {
+        entries.remove(id);
+    }
+
+    /**
+     * Replace all the names of the index, the suggestions read the previous names until the new ones are all indexed
+     */
+    public synchronized void replaceAll(Collection<ShopSuggestion> shops) {
+        Entries newEntries = new Entries();
+        shops.forEach(shop -> newEntries.put(shop.id(), shop.name()));
+        entries = newEntries;
+    }
+
+    public int size() {
+        return entries.names.size();
+    }
+
+    /**
+     * @return the shops with a word starting with each word of the prefix, at most limit
+     */
+    public List<ShopSuggestion> suggest(String prefix, int limit) {
+        List<String> prefixWords = words(prefix);
+        if (prefixWords.isEmpty()) {
+            return List.of();
+        }
+
+        // The longest word of the prefix is the most selective range
+        String rangeWord = prefixWords.stream().max(Comparator.comparingInt(String::length)).orElseThrow();
+        Entries current = entries;
+        Map<Long, ShopSuggestion> suggestions = new LinkedHashMap<>();
+        for (Entry entry : current.words.subMap(rangeWord, rangeWord + Character.MAX_VALUE).values()) {
+            if (suggestions.size() == limit) {
+                break;
+            }
+            if (!suggestions.containsKey(entry.shop().id())
+                    && (prefixWords.size() == 1 || startsWords(entry.words(), prefixWords))) {
+                suggestions.put(entry.shop().id(), entry.shop());
+            }
+        }
+        return new ArrayList<>(suggestions.values());
+    }
+
+    private static boolean startsWords(List<String> words, List<String> prefixWords) {
+        return prefixWords.stream().allMatch(prefixWord -> words.stream().anyMatch(word -> word.startsWith(prefixWord)));
+    }
+
+    private static List<String> words(String text) {
+        String normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(normalized)).filter(word -> !word.isEmpty()).toList();
+    }
+
+    private static class Entries {
+        final Map<Long, String> names = new ConcurrentHashMap<>();
+        // Word of a name, then id of the shop: the shops sharing a word have a key each
+        final ConcurrentSkipListMap<String, Entry> words = new ConcurrentSkipListMap<>();
+
+        void put(long id, String name) {
+            remove(id);
+            names.put(id, name);
+            // The words are kept normalized, the suggestions with several words check them without splitting the name
+            Entry entry = new Entry(new ShopSuggestion(id, name), words(name));
+            entry.words().forEach(word -> words.put(key(word, id), entry));
+        }
+
+        void remove(long id) {
+            String name = names.remove(id);
+            if (name != null) {
+                words(name).forEach(word -> words.remove(key(word, id)));
+            }
+        }
+
+        private static String key(String word, long id) {
+            return word + '\u0000' + id;
+        }
+    }
+
+    private record Entry(ShopSuggestion shop, List<String> words) {
+    }
+}
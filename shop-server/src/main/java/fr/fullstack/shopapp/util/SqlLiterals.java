@@ -0,0 +1,14 @@
+package fr.fullstack.shopapp.util;
+
+/**
+ * Values written in the statements that do not take bind parameters, such as the arguments of a trigger
+ */
+public class SqlLiterals {
+    private SqlLiterals() {
+    }
+
+    // The quotes of the value are doubled (standard_conforming_strings, on by default since PostgreSQL 9.1)
+    public static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
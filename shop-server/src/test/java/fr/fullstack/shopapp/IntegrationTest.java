@@ -0,0 +1,93 @@
+package fr.fullstack.shopapp;
+
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Locale;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.service.CategoryService;
+import fr.fullstack.shopapp.service.ProductService;
+import fr.fullstack.shopapp.service.ShopService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application started on a PostgreSQL container shared by all the test classes, without Elasticsearch. The tests
+ * commit their writes: they create their own rows and only check these.
+ */
+// Also for the tests without MockMvc, so that all the test classes share the same context
+@AutoConfigureMockMvc
+@SpringBootTest(properties = {
+        "ES_URL=localhost:9200",
+        "spring.jpa.properties.hibernate.search.enabled=false",
+        "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration"
+})
+public abstract class IntegrationTest {
+    @ServiceConnection
+    protected static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15");
+
+    static {
+        // Started once for the context cached between the test classes
+        POSTGRES.start();
+    }
+
+    @Autowired
+    protected CategoryService categoryService;
+
+    @Autowired
+    protected JdbcTemplate jdbc;
+
+    @Autowired
+    protected ProductService productService;
+
+    @Autowired
+    protected ShopService shopService;
+
+    protected Category createCategory(String name) {
+        Category category = new Category();
+        category.setName(name);
+        return categoryService.createCategory(category);
+    }
+
+    protected Product createProduct(Shop shop, Category... categories) {
+        return productService.createProduct(newProduct(0, shop, categories));
+    }
+
+    /**
+     * @param id 0 for a new product, else the id of the product to update
+     */
+    protected Product newProduct(long id, Shop shop, Category... categories) {
+        LocalizedProduct name = new LocalizedProduct();
+        name.setLocale(Locale.FR.name());
+        name.setName("Produit");
+        name.setDescription("Description du produit");
+        Product product = new Product();
+        product.setId(id);
+        product.setPrice(1000);
+        product.setShop(shop);
+        product.setCategories(new ArrayList<>(List.of(categories)));
+        product.setLocalizedProducts(new ArrayList<>(List.of(name)));
+        return product;
+    }
+
+    protected Shop createShop(String name) {
+        Shop shop = new Shop();
+        shop.setName(name);
+        return shopService.createShop(shop);
+    }
+
+    protected long getNbCategories(long shopId) {
+        return jdbc.queryForObject("SELECT nb_categories FROM shop_stats WHERE shop_id = ?", Long.class, shopId);
+    }
+
+    protected long getNbProducts(long shopId) {
+        return jdbc.queryForObject("SELECT nb_products FROM shop_stats WHERE shop_id = ?", Long.class, shopId);
+    }
+}
@@ -0,0 +1,80 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.IntegrationTest;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ProductControllerTest extends IntegrationTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void answersNotModifiedToTheETagOfTheCurrentProduct() throws Exception {
+        Product product = createProduct(createShop("ETag produit"));
+
+        String eTag = mockMvc.perform(get("/api/v1/products/{id}", product.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/v1/products/{id}", product.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+    }
+
+    // The product embeds its shop with its stats
+    @Test
+    void changesTheETagOfAProductWithTheStatsOfItsShop() throws Exception {
+        Shop shop = createShop("ETag stats produit");
+        Product product = createProduct(shop);
+        String eTag = getETag(product.getId());
+
+        createProduct(shop);
+
+        // The product was cached by the first read, its shop is read with its new stats
+        mockMvc.perform(get("/api/v1/products/{id}", product.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.shop.nbProducts").value(2));
+    }
+
+    @Test
+    void incrementsTheVersionOfAnUpdatedProductOnce() throws Exception {
+        Shop shop = createShop("Version produit");
+        Product product = createProduct(shop);
+        String eTag = getETag(product.getId());
+
+        // The row of the product changes
+        Product newPrice = newProduct(product.getId(), shop);
+        newPrice.setPrice(2000);
+        productService.updateProduct(newPrice);
+        assertThat(getVersion(product.getId())).isEqualTo(1);
+
+        // Only the localized products change
+        Product newName = newProduct(product.getId(), shop);
+        newName.setPrice(2000);
+        newName.getLocalizedProducts().get(0).setName("Produit renommé");
+        productService.updateProduct(newName);
+        assertThat(getVersion(product.getId())).isEqualTo(2);
+
+        mockMvc.perform(get("/api/v1/products/{id}", product.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    private String getETag(long productId) throws Exception {
+        return mockMvc.perform(get("/api/v1/products/{id}", productId))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private long getVersion(long productId) {
+        return jdbc.queryForObject("SELECT version FROM products WHERE id = ?", Long.class, productId);
+    }
+}
@@ -0,0 +1,134 @@
+package fr.fullstack.shopapp.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.IntegrationTest;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ShopControllerTest extends IntegrationTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void answersNotModifiedToTheETagOfTheCurrentShop() throws Exception {
+        Shop shop = createShop("ETag");
+
+        String eTag = mockMvc.perform(get("/api/v1/shops/{id}", shop.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/v1/shops/{id}", shop.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void changesTheETagOfAShopWithItsStats() throws Exception {
+        Shop shop = createShop("ETag stats");
+        String eTag = getETag(shop.getId());
+
+        createProduct(shop);
+
+        mockMvc.perform(get("/api/v1/shops/{id}", shop.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+    }
+
+    @Test
+    void incrementsTheVersionOfAnUpdatedShopOnce() throws Exception {
+        Shop shop = createShop("Version");
+        String eTag = getETag(shop.getId());
+
+        // The row of the shop changes
+        shop.setName("Version renamed");
+        shopService.updateShop(shop);
+        assertThat(getVersion(shop.getId())).isEqualTo(1);
+
+        // Only the opening hours change
+        OpeningHoursShop openingHours = new OpeningHoursShop();
+        openingHours.setDay(1);
+        openingHours.setOpenAt(LocalTime.of(9, 0));
+        openingHours.setCloseAt(LocalTime.of(18, 0));
+        shop.setOpeningHours(new ArrayList<>(List.of(openingHours)));
+        shopService.updateShop(shop);
+        assertThat(getVersion(shop.getId())).isEqualTo(2);
+
+        mockMvc.perform(get("/api/v1/shops/{id}", shop.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void readsEveryShopOnceWithTheCursorsOfTheNextPages() throws Exception {
+        long firstB = createShop("Curseur B").getId();
+        long a = createShop("Curseur A").getId();
+        long secondB = createShop("Curseur B").getId();
+
+        List<Long> ids = new ArrayList<>();
+        String cursor = "";
+        do {
+            JsonNode page = getJson(get("/api/v1/shops").param("after", cursor).param("size", "2")
+                    .param("sortBy", "name").param("withCount", "false"));
+            page.get("content").forEach(shop -> ids.add(shop.get("id").asLong()));
+            cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+        } while (cursor != null);
+
+        assertThat(ids).doesNotHaveDuplicates();
+        assertThat((long) ids.size()).isEqualTo(jdbc.queryForObject("SELECT COUNT(*) FROM shops", Long.class));
+        // Sorted by name, then by id for the same name
+        assertThat(ids.indexOf(a)).isLessThan(ids.indexOf(firstB));
+        assertThat(ids.indexOf(firstB)).isLessThan(ids.indexOf(secondB));
+    }
+
+    @Test
+    void rejectsAnInvalidCreationDate() throws Exception {
+        mockMvc.perform(get("/api/v1/shops").param("createdAfter", "foo"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/shops").param("after", "").param("createdBefore", "2024-13-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void rejectsTheCursorOfAnotherSort() throws Exception {
+        createShop("Curseur tri 1");
+        createShop("Curseur tri 2");
+        String cursor = getJson(get("/api/v1/shops").param("after", "").param("size", "1").param("sortBy", "name"))
+                .get("nextCursor").asText();
+
+        mockMvc.perform(get("/api/v1/shops").param("after", cursor).param("size", "1").param("sortBy", "createdAt"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private String getETag(long shopId) throws Exception {
+        return mockMvc.perform(get("/api/v1/shops/{id}", shopId))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private JsonNode getJson(RequestBuilder request) throws Exception {
+        return objectMapper.readTree(
+                mockMvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getContentAsString()
+        );
+    }
+
+    private long getVersion(long shopId) {
+        return jdbc.queryForObject("SELECT version FROM shops WHERE id = ?", Long.class, shopId);
+    }
+}
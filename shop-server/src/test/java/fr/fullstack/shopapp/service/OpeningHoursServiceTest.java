@@ -0,0 +1,45 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.IntegrationTest;
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.dto.ShopView;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.Time;
+import java.time.LocalTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpeningHoursServiceTest extends IntegrationTest {
+    @Autowired
+    private OpeningHoursService openingHoursService;
+
+    @Test
+    void listsOnceAShopWithOverlappingOpeningHoursWrittenInSql() {
+        Shop shop = createShop("Horaires SQL");
+        // Not validated by the API: both opening hours contain wednesday 10:00
+        insertOpeningHours(shop.getId(), 3, LocalTime.of(9, 0), LocalTime.of(12, 0));
+        insertOpeningHours(shop.getId(), 3, LocalTime.of(8, 0), LocalTime.of(11, 0));
+
+        CursorPage<ShopView> page = openingHoursService.getOpenShopList(
+                Optional.of(3), Optional.of(LocalTime.of(10, 0)), Optional.empty(), 1000
+        );
+
+        assertThat(page.getContent()).filteredOn(view -> view.id() == shop.getId()).hasSize(1);
+    }
+
+    private void insertOpeningHours(long shopId, int day, LocalTime openAt, LocalTime closeAt) {
+        long id = jdbc.queryForObject(
+                "INSERT INTO opening_hours (id, close_at, close_minute, day, open_at, open_minute) "
+                        + "VALUES (nextval('opening_hours_shop_id_seq'), ?, ?, ?, ?, ?) RETURNING id",
+                Long.class,
+                Time.valueOf(closeAt), OpeningHoursShop.minuteOfWeek(day, closeAt), day,
+                Time.valueOf(openAt), OpeningHoursShop.minuteOfWeek(day, openAt)
+        );
+        jdbc.update("INSERT INTO shops_opening_hours (shop_id, opening_hours_id) VALUES (?, ?)", shopId, id);
+    }
+}
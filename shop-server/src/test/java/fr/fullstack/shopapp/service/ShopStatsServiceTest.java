@@ -0,0 +1,90 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.IntegrationTest;
+import fr.fullstack.shopapp.dto.ShopView;
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShopStatsServiceTest extends IntegrationTest {
+    @Test
+    void countsTheProductsAndDistinctCategoriesOfTheCreatedProducts() {
+        Shop shop = createShop("Stats creation");
+        Category bread = createCategory("Pain");
+        Category cake = createCategory("Gâteau");
+
+        createProduct(shop, bread);
+        createProduct(shop, bread);
+        createProduct(shop, bread, cake);
+
+        assertThat(getNbProducts(shop.getId())).isEqualTo(3);
+        assertThat(getNbCategories(shop.getId())).isEqualTo(2);
+    }
+
+    @Test
+    void movesTheCountersWithAProductMovedToAnotherShop() {
+        Shop from = createShop("Stats move from");
+        Shop to = createShop("Stats move to");
+        Category category = createCategory("Fleurs");
+        Product product = createProduct(from, category);
+        createProduct(from);
+
+        productService.updateProduct(newProduct(product.getId(), to, category));
+
+        assertThat(getNbProducts(from.getId())).isEqualTo(1);
+        assertThat(getNbCategories(from.getId())).isEqualTo(0);
+        assertThat(getNbProducts(to.getId())).isEqualTo(1);
+        assertThat(getNbCategories(to.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void decrementsTheCountersOfADeletedProduct() {
+        Shop shop = createShop("Stats product deletion");
+        Category category = createCategory("Livres");
+        Product product = createProduct(shop, category);
+        createProduct(shop);
+
+        productService.deleteProductById(product.getId());
+
+        assertThat(getNbProducts(shop.getId())).isEqualTo(1);
+        assertThat(getNbCategories(shop.getId())).isEqualTo(0);
+    }
+
+    @Test
+    void recountsTheCategoriesOfTheShopsOfADeletedCategory() {
+        Shop shop = createShop("Stats category deletion");
+        Category kept = createCategory("Vins");
+        Category deleted = createCategory("Bières");
+        createProduct(shop, kept, deleted);
+
+        categoryService.deleteCategoryById(deleted.getId());
+
+        assertThat(getNbProducts(shop.getId())).isEqualTo(1);
+        assertThat(getNbCategories(shop.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void createsTheStatsOfAShopInsertedOutsideTheApplication() {
+        long shopId = jdbc.queryForObject(
+                "INSERT INTO shops (id, created_at, in_vacations, name, version) "
+                        + "VALUES (nextval('shops_id_seq'), CURRENT_DATE, false, 'Stats SQL', 0) RETURNING id",
+                Long.class
+        );
+
+        assertThat(getNbProducts(shopId)).isEqualTo(0);
+        assertThat(getNbCategories(shopId)).isEqualTo(0);
+        // The listing sorted by nbProducts is an inner join on the stats, every shop is listed
+        Page<ShopView> shops = shopService.getShopList(
+                Optional.of("nbProducts"), Optional.empty(), Optional.empty(), Optional.empty(), PageRequest.of(0, 1)
+        );
+        assertThat(shops.getTotalElements())
+                .isEqualTo(jdbc.queryForObject("SELECT COUNT(*) FROM shops", Long.class));
+    }
+}
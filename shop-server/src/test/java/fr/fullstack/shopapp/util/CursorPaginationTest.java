@@ -0,0 +1,63 @@
+package fr.fullstack.shopapp.util;
+
+import fr.fullstack.shopapp.exception.InvalidInputException;
+import fr.fullstack.shopapp.model.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CursorPaginationTest {
+    @Test
+    void decodesTheKeysOfAnEncodedPosition() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("createdAt", LocalDate.of(2024, 2, 29));
+        keys.put("id", 42L);
+
+        String cursor = CursorPagination.encode(ScrollPosition.forward(keys));
+        ScrollPosition position = CursorPagination.decode(Optional.of(cursor), Shop.class, Sort.by("createdAt", "id"));
+
+        assertThat(((KeysetScrollPosition) position).getKeys()).isEqualTo(keys);
+    }
+
+    @Test
+    void decodesTheNamesWithReservedCharacters() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("name", "Café & Thé = 100%");
+        keys.put("id", 7L);
+
+        String cursor = CursorPagination.encode(ScrollPosition.forward(keys));
+        ScrollPosition position = CursorPagination.decode(Optional.of(cursor), Shop.class, Sort.by("name", "id"));
+
+        assertThat(((KeysetScrollPosition) position).getKeys()).isEqualTo(keys);
+    }
+
+    @Test
+    void startsFromTheFirstPageWithoutCursor() {
+        ScrollPosition position = CursorPagination.decode(Optional.empty(), Shop.class, Sort.by("id"));
+
+        assertThat(position.isInitial()).isTrue();
+    }
+
+    @Test
+    void rejectsACursorOfAnotherSort() {
+        String cursor = CursorPagination.encode(ScrollPosition.forward(Map.of("id", 42L)));
+
+        assertThatThrownBy(() -> CursorPagination.decode(Optional.of(cursor), Shop.class, Sort.by("name", "id")))
+                .isInstanceOf(InvalidInputException.class);
+    }
+
+    @Test
+    void rejectsAnInvalidCursor() {
+        assertThatThrownBy(() -> CursorPagination.decode(Optional.of("not a cursor"), Shop.class, Sort.by("id")))
+                .isInstanceOf(InvalidInputException.class);
+    }
+}